@@ -0,0 +1,219 @@
+package com.thunken.beacon.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Reproducible generator for synthetic BEACON dumps. The same settings and seed always produce the same dump.
+ * <p>
+ * Each link line has one, two or three tokens according to the configured shares. Token lengths are uniformly
+ * distributed between half and one and a half times the configured mean lengths. A share of lines gets a non-ASCII
+ * character (which forces normalization in the parser), and another share is malformed (too many tokens or an empty
+ * source token). The header contains the usual meta fields followed by a configurable number of extra meta lines.
+ */
+public class BeaconDumpGenerator {
+
+	private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz-";
+
+	private static final String NON_ASCII = "äöüßéèçñøåłžčΩλжд中文字";
+
+	private int annotationLength = 8;
+
+	private long links = 1_000_000L;
+
+	private double malformedShare = 0.001;
+
+	private int metaFields = 0;
+
+	private double nonAsciiShare = 0.01;
+
+	private final Random random;
+
+	private final long seed;
+
+	private int sourceLength = 10;
+
+	private int targetLength = 12;
+
+	private double threeTokenShare = 0.2;
+
+	private double twoTokenShare = 0.3;
+
+	public BeaconDumpGenerator(final long seed) {
+		this.seed = seed;
+		random = new Random(seed);
+	}
+
+	/**
+	 * Writes a dump to the specified file, and returns its size in bytes.
+	 *
+	 * @param path
+	 *            The file to write.
+	 * @return The size of the written file, in bytes.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 */
+	public long generate(final Path path) throws IOException {
+		Objects.requireNonNull(path, "path is null");
+		try (Writer writer = new BufferedWriter(
+				new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8), 1 << 16)) {
+			generate(writer);
+		}
+		return Files.size(path);
+	}
+
+	/**
+	 * Writes a dump to the specified writer. The writer is not closed.
+	 *
+	 * @param writer
+	 *            The writer.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 */
+	public void generate(final Writer writer) throws IOException {
+		Objects.requireNonNull(writer, "writer is null");
+		random.setSeed(seed);
+		writer.write("#FORMAT: BEACON\n");
+		writer.write("#PREFIX: http://example.org/source/\n");
+		writer.write("#TARGET: http://example.org/target/{ID}\n");
+		writer.write("#NAME: Synthetic BEACON dump\n");
+		writer.write("#DESCRIPTION: Generated with seed " + seed + "\n");
+		writer.write("#TIMESTAMP: 2020-01-01\n");
+		writer.write("#UPDATE: daily\n");
+		for (int i = 0; i < metaFields; i++) {
+			// Unknown meta fields are skipped by the parser, but still have to be read and matched
+			writer.write(String.format(Locale.ROOT, "#X%s: %s\n", letters(i), token(32)));
+		}
+		writer.write('\n');
+		final StringBuilder line = new StringBuilder(256);
+		for (long i = 0; i < links; i++) {
+			line.setLength(0);
+			if (random.nextDouble() < malformedShare) {
+				if (random.nextBoolean()) {
+					line.append('|').append(token(targetLength));
+				} else {
+					line.append(token(sourceLength)).append('|').append(token(annotationLength)).append('|')
+							.append(token(targetLength)).append('|').append(token(targetLength));
+				}
+			} else {
+				line.append(token(sourceLength));
+				final double tokens = random.nextDouble();
+				if (tokens < threeTokenShare) {
+					line.append('|').append(token(annotationLength)).append('|').append(token(targetLength));
+				} else if (tokens < threeTokenShare + twoTokenShare) {
+					line.append('|').append(token(annotationLength));
+				}
+				if (random.nextDouble() < nonAsciiShare) {
+					final int index = random.nextInt(line.length());
+					if (line.charAt(index) != '|') {
+						line.setCharAt(index, NON_ASCII.charAt(random.nextInt(NON_ASCII.length())));
+					}
+				}
+			}
+			writer.append(line).append('\n');
+		}
+	}
+
+	public long getLinks() {
+		return links;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setAnnotationLength(final int annotationLength) {
+		this.annotationLength = positive(annotationLength, "annotationLength");
+	}
+
+	public void setLinks(final long links) {
+		if (links < 0) {
+			throw new IllegalArgumentException("links must not be negative");
+		}
+		this.links = links;
+	}
+
+	public void setMalformedShare(final double malformedShare) {
+		this.malformedShare = share(malformedShare, "malformedShare");
+	}
+
+	public void setMetaFields(final int metaFields) {
+		if (metaFields < 0) {
+			throw new IllegalArgumentException("metaFields must not be negative");
+		}
+		this.metaFields = metaFields;
+	}
+
+	public void setNonAsciiShare(final double nonAsciiShare) {
+		this.nonAsciiShare = share(nonAsciiShare, "nonAsciiShare");
+	}
+
+	public void setSourceLength(final int sourceLength) {
+		this.sourceLength = positive(sourceLength, "sourceLength");
+	}
+
+	public void setTargetLength(final int targetLength) {
+		this.targetLength = positive(targetLength, "targetLength");
+	}
+
+	/**
+	 * Sets the shares of two-token and three-token lines. The remaining lines have a single token.
+	 */
+	public void setTokenShares(final double twoTokenShare, final double threeTokenShare) {
+		if (share(twoTokenShare, "twoTokenShare") + share(threeTokenShare, "threeTokenShare") > 1.0) {
+			throw new IllegalArgumentException("twoTokenShare + threeTokenShare must not exceed 1");
+		}
+		this.twoTokenShare = twoTokenShare;
+		this.threeTokenShare = threeTokenShare;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT,
+				"{links=%d, seed=%d, sourceLength=%d, annotationLength=%d, targetLength=%d, twoTokenShare=%s, "
+						+ "threeTokenShare=%s, nonAsciiShare=%s, malformedShare=%s, metaFields=%d}",
+				links, seed, sourceLength, annotationLength, targetLength, twoTokenShare, threeTokenShare,
+				nonAsciiShare, malformedShare, metaFields);
+	}
+
+	private String token(final int meanLength) {
+		final int length = meanLength / 2 + random.nextInt(meanLength + 1);
+		final char[] chars = new char[Math.max(1, length)];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+		}
+		return new String(chars);
+	}
+
+	private static String letters(int i) {
+		final StringBuilder builder = new StringBuilder();
+		do {
+			builder.append((char) ('A' + i % 26));
+			i /= 26;
+		} while (i > 0);
+		return builder.toString();
+	}
+
+	private static int positive(final int value, final String name) {
+		if (value <= 0) {
+			throw new IllegalArgumentException(name + " must be positive");
+		}
+		return value;
+	}
+
+	private static double share(final double value, final String name) {
+		if (!(value >= 0.0 && value <= 1.0)) {
+			throw new IllegalArgumentException(name + " must be between 0 and 1");
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,368 @@
+package com.thunken.beacon.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import com.thunken.beacon.BeaconExporter;
+import com.thunken.beacon.BeaconLink;
+import com.thunken.beacon.BeaconParser;
+
+/**
+ * End-to-end benchmark that parses a synthetic dump through each public entry point of {@link BeaconParser}.
+ * <p>
+ * For each entry point, the benchmark records links per second, bytes per second, allocated bytes per link (for the
+ * benchmark thread), and the peak resident set size of the process during the run (or peak heap usage if the resident
+ * set size is not available). The peak is reset before each run; if it cannot be reset, it is reported as the peak of
+ * the whole process, and only checked once against the budget, after all runs. The process exits with status 1 if
+ * any configured budget is exceeded.
+ * <p>
+ * Arguments are {@code key=value} pairs:
+ * <ul>
+ * <li>{@code dump}: path of the dump to parse; generated if missing, or if any generator setting is given (default:
+ * {@code target/benchmark-<hash>.beacon}, where the hash identifies the generator settings)</li>
+ * <li>{@code links}, {@code seed}, {@code sourceLength}, {@code annotationLength}, {@code targetLength},
+ * {@code twoTokenShare}, {@code threeTokenShare}, {@code nonAsciiShare}, {@code malformedShare}, {@code metaFields}:
+ * generator settings, see {@link BeaconDumpGenerator}</li>
+ * <li>{@code iterations}: number of measured runs per entry point, after one warm-up run (default: 3)</li>
+ * <li>{@code maxAllocatedBytesPerLink}, {@code minLinksPerSecond}, {@code maxPeakRss}: budgets (default: none)</li>
+ * </ul>
+ */
+public class BeaconMacroBenchmark {
+
+	private static final int BATCH_SIZE = 10_000;
+
+	private static final List<String> GENERATOR_OPTIONS = Arrays.asList("links", "seed", "sourceLength",
+			"annotationLength", "targetLength", "twoTokenShare", "threeTokenShare", "nonAsciiShare", "malformedShare",
+			"metaFields");
+
+	public static void main(final String[] args) throws IOException {
+		final Map<String, String> options = new LinkedHashMap<>();
+		for (final String arg : args) {
+			final int index = arg.indexOf('=');
+			if (index <= 0) {
+				throw new IllegalArgumentException("Expected key=value, got " + arg);
+			}
+			options.put(arg.substring(0, index), arg.substring(index + 1));
+		}
+		final BeaconDumpGenerator generator = new BeaconDumpGenerator(
+				Long.parseLong(options.getOrDefault("seed", "42")));
+		generator.setLinks(Long.parseLong(options.getOrDefault("links", "1000000")));
+		generator.setSourceLength(Integer.parseInt(options.getOrDefault("sourceLength", "10")));
+		generator.setAnnotationLength(Integer.parseInt(options.getOrDefault("annotationLength", "8")));
+		generator.setTargetLength(Integer.parseInt(options.getOrDefault("targetLength", "12")));
+		generator.setTokenShares(Double.parseDouble(options.getOrDefault("twoTokenShare", "0.3")),
+				Double.parseDouble(options.getOrDefault("threeTokenShare", "0.2")));
+		generator.setNonAsciiShare(Double.parseDouble(options.getOrDefault("nonAsciiShare", "0.01")));
+		generator.setMalformedShare(Double.parseDouble(options.getOrDefault("malformedShare", "0.001")));
+		generator.setMetaFields(Integer.parseInt(options.getOrDefault("metaFields", "0")));
+		// The default dump name depends on the generator settings, so that a dump is never reused with other settings
+		final Path dump = Paths.get(options.getOrDefault("dump",
+				String.format(Locale.ROOT, "target/benchmark-%08x.beacon", generator.toString().hashCode())));
+		boolean generate = !Files.exists(dump);
+		if (options.containsKey("dump")) {
+			for (final String option : GENERATOR_OPTIONS) {
+				generate |= options.containsKey(option);
+			}
+		}
+		if (generate) {
+			if (dump.getParent() != null) {
+				Files.createDirectories(dump.getParent());
+			}
+			System.out.println("Generating " + dump + " " + generator);
+			generator.generate(dump);
+		}
+		final long bytes = Files.size(dump);
+		final int iterations = Integer.parseInt(options.getOrDefault("iterations", "3"));
+		final Budget budget = new Budget(options);
+		final List<String> failures = new ArrayList<>();
+		for (final EntryPoint entryPoint : EntryPoint.values()) {
+			entryPoint.run(dump);
+			for (int i = 0; i < iterations; i++) {
+				final Result result = Result.measure(entryPoint, dump, bytes);
+				System.out.println(result);
+				budget.check(result, failures);
+			}
+		}
+		budget.checkProcessPeakRss(failures);
+		if (!failures.isEmpty()) {
+			failures.forEach(System.err::println);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread so far, or -1 if allocation counting is not available
+	 * or disabled in this JVM.
+	 */
+	private static long allocatedBytes() {
+		final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1L;
+	}
+
+	private static long peakRss() {
+		// VmHWM is the peak resident set size on Linux
+		final Path status = Paths.get("/proc/self/status");
+		if (Files.isReadable(status)) {
+			try {
+				for (final String line : Files.readAllLines(status, StandardCharsets.US_ASCII)) {
+					if (line.startsWith("VmHWM:")) {
+						return Long.parseLong(line.replaceAll("\\D+", "")) * 1024L;
+					}
+				}
+			} catch (final IOException | NumberFormatException e) {
+				// Fall back to peak heap usage
+			}
+		}
+		long peak = 0L;
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	/**
+	 * Resets the peak reported by {@link #peakRss()} to the current usage, and returns {@code false} if the peak could
+	 * not be reset, i.e. if it still covers everything the process did before.
+	 */
+	private static boolean resetPeakRss() {
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+		if (!Files.isReadable(Paths.get("/proc/self/status"))) {
+			return true;
+		}
+		// Writing 5 resets VmHWM to the current resident set size on Linux
+		try {
+			Files.write(Paths.get("/proc/self/clear_refs"), "5".getBytes(StandardCharsets.US_ASCII));
+			return true;
+		} catch (final IOException | SecurityException e) {
+			return false;
+		}
+	}
+
+	private static final class Budget {
+
+		private final double maxAllocatedBytesPerLink;
+
+		private final long maxPeakRss;
+
+		private final double minLinksPerSecond;
+
+		private boolean processPeakRss;
+
+		Budget(final Map<String, String> options) {
+			maxAllocatedBytesPerLink = Double
+					.parseDouble(options.getOrDefault("maxAllocatedBytesPerLink", "Infinity"));
+			maxPeakRss = Long.parseLong(options.getOrDefault("maxPeakRss", Long.toString(Long.MAX_VALUE)));
+			minLinksPerSecond = Double.parseDouble(options.getOrDefault("minLinksPerSecond", "0"));
+		}
+
+		void check(final Result result, final List<String> failures) {
+			if (!result.isAllocationCounted() && maxAllocatedBytesPerLink != Double.POSITIVE_INFINITY) {
+				failures.add(String.format(Locale.ROOT,
+						"%s: allocated bytes cannot be counted in this JVM, so the budget of %.1f cannot be checked",
+						result.entryPoint, maxAllocatedBytesPerLink));
+			} else if (result.allocatedBytesPerLink() > maxAllocatedBytesPerLink) {
+				failures.add(String.format(Locale.ROOT, "%s: %.1f allocated bytes per link exceeds budget of %.1f",
+						result.entryPoint, result.allocatedBytesPerLink(), maxAllocatedBytesPerLink));
+			}
+			if (!result.peakRssReset) {
+				// Includes earlier runs, so it cannot be attributed to this entry point
+				processPeakRss = true;
+			} else if (result.peakRss > maxPeakRss) {
+				failures.add(String.format(Locale.ROOT, "%s: peak RSS of %d bytes exceeds budget of %d",
+						result.entryPoint, result.peakRss, maxPeakRss));
+			}
+			if (result.linksPerSecond() < minLinksPerSecond) {
+				failures.add(String.format(Locale.ROOT, "%s: %.0f links/s is below budget of %.0f",
+						result.entryPoint, result.linksPerSecond(), minLinksPerSecond));
+			}
+		}
+
+		void checkProcessPeakRss(final List<String> failures) {
+			final long peakRss = peakRss();
+			if (processPeakRss && peakRss > maxPeakRss) {
+				failures.add(String.format(Locale.ROOT, "Process peak RSS of %d bytes exceeds budget of %d", peakRss,
+						maxPeakRss));
+			}
+		}
+
+	}
+
+	private enum EntryPoint {
+
+		EXPORT {
+			@Override
+			long run(final Path dump) throws IOException {
+				try (BeaconParser parser = new BeaconParser(Files.newBufferedReader(dump, StandardCharsets.UTF_8))) {
+					return new BeaconExporter(BeaconExporter.Format.NTRIPLES).export(parser, NullWriter.INSTANCE);
+				}
+			}
+		},
+		NEXT {
+			@Override
+			long run(final Path dump) throws IOException {
+				long links = 0L;
+				try (BeaconParser parser = new BeaconParser(Files.newBufferedReader(dump, StandardCharsets.UTF_8))) {
+					while (parser.hasNext()) {
+						if (parser.next().isPresent()) {
+							links++;
+						}
+					}
+				}
+				return links;
+			}
+		},
+		NEXT_BATCH {
+			@Override
+			long run(final Path dump) throws IOException {
+				long links = 0L;
+				final BeaconLink[] batch = new BeaconLink[BATCH_SIZE];
+				try (BeaconParser parser = new BeaconParser(Files.newBufferedReader(dump, StandardCharsets.UTF_8))) {
+					int n;
+					while ((n = parser.nextBatch(batch)) > 0) {
+						links += n;
+					}
+				}
+				return links;
+			}
+		},
+		PARSE_LINE {
+			@Override
+			long run(final Path dump) throws IOException {
+				long links = 0L;
+				try (BufferedReader reader = Files.newBufferedReader(dump, StandardCharsets.UTF_8);
+						BeaconParser parser = new BeaconParser(Files.newBufferedReader(dump, StandardCharsets.UTF_8))) {
+					// Skip the header read by the parser
+					for (int i = 1; i < parser.getLineNo(); i++) {
+						reader.readLine();
+					}
+					String line;
+					while ((line = reader.readLine()) != null) {
+						final Optional<BeaconLink> link = BeaconParser.parseLine(line, parser.getMetaFields());
+						if (link.isPresent()) {
+							links++;
+						}
+					}
+				}
+				return links;
+			}
+		};
+
+		abstract long run(Path dump) throws IOException;
+
+	}
+
+	private static final class NullWriter extends Writer {
+
+		static final NullWriter INSTANCE = new NullWriter();
+
+		@Override
+		public Writer append(final CharSequence csq) {
+			return this;
+		}
+
+		@Override
+		public void close() {
+			/* NO OP */
+		}
+
+		@Override
+		public void flush() {
+			/* NO OP */
+		}
+
+		@Override
+		public void write(final char[] cbuf, final int off, final int len) {
+			/* NO OP */
+		}
+
+	}
+
+	private static final class Result {
+
+		final long allocatedBytes;
+
+		final long bytes;
+
+		final EntryPoint entryPoint;
+
+		final long links;
+
+		final long nanos;
+
+		final long peakRss;
+
+		final boolean peakRssReset;
+
+		Result(final EntryPoint entryPoint, final long links, final long bytes, final long nanos,
+				final long allocatedBytes, final long peakRss, final boolean peakRssReset) {
+			this.entryPoint = entryPoint;
+			this.links = links;
+			this.bytes = bytes;
+			this.nanos = nanos;
+			this.allocatedBytes = allocatedBytes;
+			this.peakRss = peakRss;
+			this.peakRssReset = peakRssReset;
+		}
+
+		double allocatedBytesPerLink() {
+			if (!isAllocationCounted()) {
+				return Double.NaN;
+			}
+			return links == 0L ? 0.0 : (double) allocatedBytes / links;
+		}
+
+		boolean isAllocationCounted() {
+			return allocatedBytes >= 0L;
+		}
+
+		double linksPerSecond() {
+			return links * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT,
+					"%-10s %,12d links %,14.0f links/s %,10.1f MB/s %10s B/link allocated %,8d MB peak RSS%s",
+					entryPoint, links, linksPerSecond(), bytes * 1e3 / nanos,
+					isAllocationCounted() ? String.format(Locale.ROOT, "%,.1f", allocatedBytesPerLink()) : "n/a",
+					peakRss >> 20, peakRssReset ? "" : " (process)");
+		}
+
+		static Result measure(final EntryPoint entryPoint, final Path dump, final long bytes) throws IOException {
+			final boolean peakRssReset = resetPeakRss();
+			final long allocatedBefore = allocatedBytes();
+			final long start = System.nanoTime();
+			final long links = entryPoint.run(dump);
+			final long nanos = System.nanoTime() - start;
+			final long allocatedAfter = allocatedBytes();
+			final long allocated = allocatedBefore < 0L || allocatedAfter < 0L ? -1L : allocatedAfter - allocatedBefore;
+			return new Result(entryPoint, links, bytes, nanos, allocated, peakRss(), peakRssReset);
+		}
+
+	}
+
+}
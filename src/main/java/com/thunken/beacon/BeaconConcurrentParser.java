@@ -0,0 +1,359 @@
+package com.thunken.beacon;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Thread-safe BEACON parser for dump files, which lets any number of threads claim and parse batches of links
+ * concurrently, without a central reader thread or queue.
+ * <p>
+ * Each call to {@link #claimBatch()} claims the next block of whole lines of the file with a compare-and-set on a
+ * shared cursor, which holds the byte offset of the next unclaimed line and the number of lines before it. The
+ * claiming thread reads the block with a positional read, counts its line feeds to advance the cursor, and then
+ * decodes and tokenizes the block on its own, so that parsing is spread over all consumer threads. Line and link
+ * numbers are the same as those reported by {@link BeaconParser} for the same lines.
+ * <p>
+ * The meta lines are parsed by a {@link BeaconParser} when the parser is created. Lines are expected to be terminated
+ * by a line feed, optionally preceded by a carriage return.
+ * <p>
+ * Note: the current Javadoc for this project is incomplete. We rely on
+ * <a href="https://projectlombok.org/" target="_top">Lombok</a> to generate boilerplate code, and Lombok does not plug
+ * into Javadoc. Generated methods and constructors are not included, and the Javadoc for other methods and constructors
+ * may be incomplete. See <a href="https://projectlombok.org/features/delombok" target="_top">delombok</a> and
+ * <a href="https://github.com/thunken/beacon/issues/1" target="_top">beacon#1</a> for more information.
+ *
+ * @see BeaconParser
+ */
+public class BeaconConcurrentParser implements Closeable {
+
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+	private final int blockSize;
+
+	private final FileChannel channel;
+
+	private final AtomicReference<Position> cursor;
+
+	private final List<BeaconTokenFilter> filters = new CopyOnWriteArrayList<>();
+
+	private final int headerLines;
+
+	private final BeaconMetaFields metaFields;
+
+	private final long size;
+
+	/**
+	 * Creates a concurrent BEACON parser for the specified file, with blocks of {@value #DEFAULT_BLOCK_SIZE} bytes.
+	 *
+	 * @param path
+	 *            A BEACON dump file, encoded in UTF-8.
+	 * @throws BeaconFormatException
+	 *             If the meta lines violate the BEACON specification.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws NullPointerException
+	 *             If {@code path} is null.
+	 */
+	public BeaconConcurrentParser(final Path path) throws IOException {
+		this(path, new BeaconMetaFields(), DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Creates a concurrent BEACON parser for the specified file.
+	 *
+	 * @param path
+	 *            A BEACON dump file, encoded in UTF-8.
+	 * @param defaults
+	 *            Default values for BEACON meta fields. Overwritten by meta fields parsed from the file, if any.
+	 * @param blockSize
+	 *            The number of bytes claimed by each call to {@link #claimBatch()}, rounded up to whole lines.
+	 * @throws BeaconFormatException
+	 *             If the meta lines violate the BEACON specification.
+	 * @throws IllegalArgumentException
+	 *             If {@code blockSize} is not positive.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws NullPointerException
+	 *             If {@code path} or {@code defaults} is null.
+	 */
+	public BeaconConcurrentParser(final Path path, final BeaconMetaFields defaults, final int blockSize)
+			throws IOException {
+		Objects.requireNonNull(path, "path is null");
+		Objects.requireNonNull(defaults, "defaults is null");
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("blockSize must be positive");
+		}
+		this.blockSize = blockSize;
+		final boolean hasLinks;
+		try (BeaconParser parser = new BeaconParser(Files.newBufferedReader(path, StandardCharsets.UTF_8), defaults)) {
+			metaFields = parser.getMetaFields();
+			hasLinks = parser.hasNext();
+			headerLines = parser.getLineNo() - (hasLinks ? 1 : 0);
+		}
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			size = channel.size();
+			cursor = new AtomicReference<>(new Position(hasLinks ? skipLines(headerLines) : size, headerLines));
+		} catch (final IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Adds a filter on link tokens. Lines whose links are rejected by any filter are left out of the batches returned
+	 * by {@link #claimBatch()}. Filters should be added before batches are claimed.
+	 *
+	 * @param filter
+	 *            The filter to add.
+	 * @throws NullPointerException
+	 *             If {@code filter} is null.
+	 * @see BeaconParser#addFilter(BeaconTokenFilter)
+	 */
+	public void addFilter(final BeaconTokenFilter filter) {
+		filters.add(Objects.requireNonNull(filter, "filter is null"));
+	}
+
+	/**
+	 * Claims the next block of lines and parses it in the current thread. This method can be called concurrently by
+	 * any number of threads; each line is claimed by exactly one call. Lines that cannot be parsed or are rejected by a
+	 * filter are left out of the batch, so a batch may be empty even though the dump has more links.
+	 *
+	 * @return An {@link Optional} describing the parsed batch, or {@link Optional#empty()} if all lines have been
+	 *         claimed.
+	 * @throws IOException
+	 *             If an I/O error occurs, or if the block is not valid UTF-8.
+	 */
+	public Optional<Batch> claimBatch() throws IOException {
+		// Allocated per claim, so that no block outlives the batch parsed from it, even in pooled threads
+		ByteBuffer buffer = ByteBuffer.allocate(blockSize);
+		while (true) {
+			final Position start = cursor.get();
+			if (start.offset >= size) {
+				return Optional.empty();
+			}
+			// Read at least one block, and up to the end of its last line
+			buffer.clear();
+			int end = -1;
+			while (end < 0) {
+				if (!buffer.hasRemaining()) {
+					final ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+					buffer.flip();
+					buffer = larger.put(buffer);
+				}
+				final long position = start.offset + buffer.position();
+				if (position >= size) {
+					end = buffer.position();
+					break;
+				}
+				buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + size - position));
+				if (channel.read(buffer, position) < 0) {
+					end = buffer.position();
+					break;
+				}
+				if (buffer.position() >= Math.min(blockSize, size - start.offset)) {
+					end = lastLineEnd(buffer);
+				}
+				buffer.limit(buffer.capacity());
+			}
+			final ByteBuffer block = (ByteBuffer) buffer.duplicate().position(0).limit(end);
+			long lines = BeaconProbe.countLineFeeds(block);
+			if (end > 0 && block.get(end - 1) != '\n') {
+				// Last line of the file, without line feed
+				lines++;
+			}
+			if (cursor.compareAndSet(start, new Position(start.offset + end, start.lineNo + lines))) {
+				return Optional.of(parse(block, start.lineNo));
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	public BeaconMetaFields getMetaFields() {
+		return metaFields;
+	}
+
+	private Batch parse(final ByteBuffer block, final long lineNo) throws IOException {
+		final CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(block);
+		final String text = chars.toString();
+		final List<BeaconLink> links = new ArrayList<>();
+		long[] lineNos = new long[64];
+		long current = lineNo;
+		int start = 0;
+		while (start < text.length()) {
+			int end = text.indexOf('\n', start);
+			final int next = end < 0 ? text.length() : end + 1;
+			if (end < 0) {
+				end = text.length();
+			}
+			if (end > start && text.charAt(end - 1) == '\r') {
+				end--;
+			}
+			current++;
+			final BeaconLink link = BeaconParser.parseLink(text.substring(start, end), metaFields, filters);
+			if (link != null) {
+				if (links.size() == lineNos.length) {
+					lineNos = Arrays.copyOf(lineNos, lineNos.length * 2);
+				}
+				lineNos[links.size()] = current;
+				links.add(link);
+			}
+			start = next;
+		}
+		return new Batch(Collections.unmodifiableList(links), Arrays.copyOf(lineNos, links.size()), lineNo + 1,
+				current - lineNo, headerLines);
+	}
+
+	/**
+	 * Returns the byte offset that follows the specified number of lines.
+	 */
+	private long skipLines(final int lines) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(1 << 13);
+		long position = 0L;
+		int remaining = lines;
+		while (remaining > 0) {
+			buffer.clear();
+			final int n = channel.read(buffer, position);
+			if (n < 0) {
+				return size;
+			}
+			for (int i = 0; i < n; i++) {
+				if (buffer.get(i) == '\n' && --remaining == 0) {
+					return position + i + 1;
+				}
+			}
+			position += n;
+		}
+		return position;
+	}
+
+	/**
+	 * Returns the number of bytes up to and including the last line feed in the specified buffer, or -1 if there is
+	 * none.
+	 */
+	private static int lastLineEnd(final ByteBuffer buffer) {
+		for (int i = buffer.position() - 1; i >= 0; i--) {
+			if (buffer.get(i) == '\n') {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Links parsed from a block of consecutive lines, with their line and link numbers.
+	 */
+	public static final class Batch {
+
+		private final long firstLineNo;
+
+		private final int headerLines;
+
+		private final long lineCount;
+
+		private final long[] lineNos;
+
+		private final List<BeaconLink> links;
+
+		private Batch(final List<BeaconLink> links, final long[] lineNos, final long firstLineNo,
+				final long lineCount, final int headerLines) {
+			this.links = links;
+			this.lineNos = lineNos;
+			this.firstLineNo = firstLineNo;
+			this.lineCount = lineCount;
+			this.headerLines = headerLines;
+		}
+
+		/**
+		 * Returns the number of the first line of this block, counted from 1 at the first line of the file.
+		 *
+		 * @return The number of the first line of this block.
+		 */
+		public long getFirstLineNo() {
+			return firstLineNo;
+		}
+
+		/**
+		 * Returns the number of lines in this block, including lines that could not be parsed or were rejected by a
+		 * filter.
+		 *
+		 * @return The number of lines in this block.
+		 */
+		public long getLineCount() {
+			return lineCount;
+		}
+
+		/**
+		 * Returns the line number of the link at the specified index, as {@link BeaconParser#getLineNo()} would.
+		 *
+		 * @param index
+		 *            The index of a link in this batch.
+		 * @return The line number of the link at the specified index.
+		 * @throws IndexOutOfBoundsException
+		 *             If {@code index} is out of range.
+		 */
+		public long getLineNo(final int index) {
+			if (index < 0 || index >= links.size()) {
+				throw new IndexOutOfBoundsException("index: " + index + ", size: " + links.size());
+			}
+			return lineNos[index];
+		}
+
+		/**
+		 * Returns the link number of the link at the specified index, as {@link BeaconParser#getLinkNo()} would.
+		 *
+		 * @param index
+		 *            The index of a link in this batch.
+		 * @return The link number of the link at the specified index.
+		 * @throws IndexOutOfBoundsException
+		 *             If {@code index} is out of range.
+		 */
+		public long getLinkNo(final int index) {
+			return getLineNo(index) - headerLines;
+		}
+
+		public List<BeaconLink> getLinks() {
+			return links;
+		}
+
+	}
+
+	/**
+	 * Immutable cursor: byte offset of the next unclaimed line, and number of lines before it.
+	 */
+	private static final class Position {
+
+		final long lineNo;
+
+		final long offset;
+
+		Position(final long offset, final long lineNo) {
+			this.offset = offset;
+			this.lineNo = lineNo;
+		}
+
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.thunken.beacon;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Coverage of a source identifier by a list of BEACON dumps, as produced by {@link BeaconCoverageJoin}: which dumps
+ * contain at least one link from this source identifier, and which non-empty annotation tokens these links have in
+ * each dump. Dumps are identified by their index in the list of joined dumps.
+ * <p>
+ * Note: the current Javadoc for this project is incomplete. We rely on
+ * <a href="https://projectlombok.org/" target="_top">Lombok</a> to generate boilerplate code, and Lombok does not plug
+ * into Javadoc. Generated methods and constructors are not included, and the Javadoc for other methods and constructors
+ * may be incomplete. See <a href="https://projectlombok.org/features/delombok" target="_top">delombok</a> and
+ * <a href="https://github.com/thunken/beacon/issues/1" target="_top">beacon#1</a> for more information.
+ *
+ * @see BeaconCoverageJoin
+ */
+public final class BeaconCoverage {
+
+	private final Map<Integer, Set<String>> annotations = new HashMap<>();
+
+	private final BitSet dumps = new BitSet();
+
+	private final String source;
+
+	BeaconCoverage(final String source) {
+		this.source = Objects.requireNonNull(source, "source is null");
+	}
+
+	/**
+	 * Returns the non-empty annotation tokens of the links from this source identifier in the specified dump.
+	 *
+	 * @param dump
+	 *            The index of a dump.
+	 * @return The non-empty annotation tokens of the links from this source identifier in the specified dump, in
+	 *         natural order, or an empty set if the dump does not contain such a link.
+	 */
+	public Set<String> getAnnotations(final int dump) {
+		final Set<String> set = annotations.get(dump);
+		return set == null ? Collections.emptySet() : Collections.unmodifiableSet(set);
+	}
+
+	/**
+	 * Returns the number of dumps that contain at least one link from this source identifier.
+	 *
+	 * @return The number of dumps that contain at least one link from this source identifier.
+	 */
+	public int getDumpCount() {
+		return dumps.cardinality();
+	}
+
+	/**
+	 * Returns the set of dumps that contain at least one link from this source identifier.
+	 *
+	 * @return A new bit set, with the bits of the indexes of these dumps set.
+	 */
+	public BitSet getDumps() {
+		return (BitSet) dumps.clone();
+	}
+
+	/**
+	 * Returns this source identifier, i.e. the source token expanded with the {@link BeaconMetaField#PREFIX} meta field
+	 * of each dump.
+	 *
+	 * @return This source identifier.
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	@Override
+	public String toString() {
+		return "{source=" + source + ", dumps=" + dumps + ", annotations=" + annotations + "}";
+	}
+
+	void add(final int dump, final String annotation) {
+		dumps.set(dump);
+		if (annotation != null && !annotation.isEmpty()) {
+			annotations.computeIfAbsent(dump, key -> new TreeSet<>()).add(annotation);
+		}
+	}
+
+}
@@ -0,0 +1,415 @@
+package com.thunken.beacon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Join of BEACON dumps on source identifiers, which reports for each source identifier which dumps link it, and with
+ * which annotation tokens.
+ * <p>
+ * Source tokens cannot be compared across dumps, since each dump has its own {@link BeaconMetaField#PREFIX} meta
+ * field. Each source token is therefore expanded with the prefix of its dump into a full source identifier, and one
+ * {@link BeaconCoverage} is produced per distinct source identifier, with the indexes of the dumps that contain it and
+ * the annotation tokens of its links in each dump.
+ * <p>
+ * {@link #joinSorted(Consumer)} merges dumps whose links are sorted by source identifier in a single streaming pass,
+ * in constant memory. {@link #join(Consumer)} accepts dumps in any order: worker threads parse the dumps in parallel
+ * and spill their links to hash partitions on disk, then aggregate the partitions in parallel, so that only one
+ * partition per thread is held in memory.
+ * <p>
+ * Note: the current Javadoc for this project is incomplete. We rely on
+ * <a href="https://projectlombok.org/" target="_top">Lombok</a> to generate boilerplate code, and Lombok does not plug
+ * into Javadoc. Generated methods and constructors are not included, and the Javadoc for other methods and constructors
+ * may be incomplete. See <a href="https://projectlombok.org/features/delombok" target="_top">delombok</a> and
+ * <a href="https://github.com/thunken/beacon/issues/1" target="_top">beacon#1</a> for more information.
+ *
+ * @see BeaconCoverage
+ */
+public final class BeaconCoverageJoin {
+
+	public static final int DEFAULT_PARTITIONS = 64;
+
+	private static final int BATCH_SIZE = 256;
+
+	private final List<Path> dumps;
+
+	private final int partitions;
+
+	private final Path spillDirectory;
+
+	private final int threads;
+
+	/**
+	 * Creates a join of the specified dumps, which spills to the default temporary-file directory with
+	 * {@value #DEFAULT_PARTITIONS} partitions and one thread per available processor.
+	 *
+	 * @param dumps
+	 *            BEACON dump files, encoded in UTF-8.
+	 * @throws NullPointerException
+	 *             If {@code dumps} is null or contains null.
+	 */
+	public BeaconCoverageJoin(final List<Path> dumps) {
+		this(dumps, Paths.get(System.getProperty("java.io.tmpdir")), DEFAULT_PARTITIONS,
+				Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a join of the specified dumps.
+	 *
+	 * @param dumps
+	 *            BEACON dump files, encoded in UTF-8.
+	 * @param spillDirectory
+	 *            The directory in which {@link #join(Consumer)} creates its temporary partition files.
+	 * @param partitions
+	 *            The number of partitions used by {@link #join(Consumer)}. Each partition must fit in memory.
+	 * @param threads
+	 *            The number of threads used by {@link #join(Consumer)}.
+	 * @throws IllegalArgumentException
+	 *             If {@code partitions} or {@code threads} is not positive.
+	 * @throws NullPointerException
+	 *             If {@code dumps} is null or contains null, or if {@code spillDirectory} is null.
+	 */
+	public BeaconCoverageJoin(final List<Path> dumps, final Path spillDirectory, final int partitions,
+			final int threads) {
+		Objects.requireNonNull(dumps, "dumps is null");
+		for (final Path dump : dumps) {
+			Objects.requireNonNull(dump, "dumps contains null");
+		}
+		this.dumps = Collections.unmodifiableList(new ArrayList<>(dumps));
+		this.spillDirectory = Objects.requireNonNull(spillDirectory, "spillDirectory is null");
+		if (partitions <= 0) {
+			throw new IllegalArgumentException("partitions must be positive");
+		}
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be positive");
+		}
+		this.partitions = partitions;
+		this.threads = threads;
+	}
+
+	public List<Path> getDumps() {
+		return dumps;
+	}
+
+	/**
+	 * Joins dumps in any order, by hash partitioning with disk spill. The consumer is called by one thread at a time.
+	 * Coverages are sorted by source identifier within each partition, but partitions are consumed in no particular
+	 * order. Temporary partition files are deleted before this method returns.
+	 *
+	 * @param consumer
+	 *            The consumer of coverages.
+	 * @return The number of coverages, i.e. the number of distinct source identifiers.
+	 * @throws BeaconFormatException
+	 *             If the meta lines of a dump violate the BEACON specification.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws NullPointerException
+	 *             If {@code consumer} is null.
+	 */
+	public long join(final Consumer<? super BeaconCoverage> consumer) throws IOException {
+		Objects.requireNonNull(consumer, "consumer is null");
+		final Path directory = Files.createTempDirectory(spillDirectory, "beacon-coverage-");
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Throwable failure = null;
+		try {
+			final AtomicInteger nextDump = new AtomicInteger();
+			final List<Future<long[]>> spills = new ArrayList<>(threads);
+			for (int worker = 0; worker < threads; worker++) {
+				final int id = worker;
+				spills.add(executor.submit(() -> spill(directory, id, nextDump)));
+			}
+			final long[][] counts = new long[threads][];
+			for (int worker = 0; worker < threads; worker++) {
+				counts[worker] = await(spills.get(worker));
+			}
+			final Object lock = new Object();
+			final List<Future<Long>> aggregations = new ArrayList<>(partitions);
+			for (int partition = 0; partition < partitions; partition++) {
+				final int id = partition;
+				aggregations.add(executor.submit(() -> aggregate(directory, id, counts, consumer, lock)));
+			}
+			long count = 0L;
+			for (final Future<Long> future : aggregations) {
+				count += await(future);
+			}
+			return count;
+		} catch (final IOException | RuntimeException | Error e) {
+			failure = e;
+			throw e;
+		} finally {
+			executor.shutdownNow();
+			try {
+				// Workers blocked in I/O only notice the interrupt between batches
+				awaitTermination(executor);
+				delete(directory);
+			} catch (final IOException e) {
+				if (failure == null) {
+					throw e;
+				}
+				failure.addSuppressed(e);
+			}
+		}
+	}
+
+	/**
+	 * Joins dumps whose links are sorted by source identifier, i.e. by source token expanded with the
+	 * {@link BeaconMetaField#PREFIX} meta field of their dump, in natural {@link String} order. Dumps are merged in a
+	 * single streaming pass in the current thread, and coverages are consumed in source identifier order.
+	 *
+	 * @param consumer
+	 *            The consumer of coverages.
+	 * @return The number of coverages, i.e. the number of distinct source identifiers.
+	 * @throws BeaconFormatException
+	 *             If the meta lines of a dump violate the BEACON specification.
+	 * @throws IllegalArgumentException
+	 *             If a dump is not sorted by source identifier.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws NullPointerException
+	 *             If {@code consumer} is null.
+	 */
+	public long joinSorted(final Consumer<? super BeaconCoverage> consumer) throws IOException {
+		Objects.requireNonNull(consumer, "consumer is null");
+		final List<Cursor> cursors = new ArrayList<>(dumps.size());
+		try {
+			final PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, dumps.size()));
+			for (int dump = 0; dump < dumps.size(); dump++) {
+				final Cursor cursor = new Cursor(dump, dumps.get(dump));
+				cursors.add(cursor);
+				if (cursor.advance()) {
+					queue.add(cursor);
+				}
+			}
+			long count = 0L;
+			while (!queue.isEmpty()) {
+				final BeaconCoverage coverage = new BeaconCoverage(queue.peek().source);
+				while (!queue.isEmpty() && queue.peek().source.equals(coverage.getSource())) {
+					final Cursor cursor = queue.poll();
+					do {
+						coverage.add(cursor.dump, cursor.annotation);
+					} while (cursor.advance() && cursor.source.equals(coverage.getSource()));
+					if (cursor.source != null) {
+						queue.add(cursor);
+					}
+				}
+				consumer.accept(coverage);
+				count++;
+			}
+			return count;
+		} finally {
+			for (final Cursor cursor : cursors) {
+				cursor.close();
+			}
+		}
+	}
+
+	private long aggregate(final Path directory, final int partition, final long[][] counts,
+			final Consumer<? super BeaconCoverage> consumer, final Object lock) throws IOException {
+		final Map<String, BeaconCoverage> coverages = new TreeMap<>();
+		for (int worker = 0; worker < counts.length; worker++) {
+			long remaining = counts[worker][partition];
+			if (remaining == 0L) {
+				continue;
+			}
+			final Path file = directory.resolve(partitionFileName(worker, partition));
+			try (DataInputStream in = new DataInputStream(
+					new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+				for (; remaining > 0L; remaining--) {
+					final int dump = in.readInt();
+					final String source = in.readUTF();
+					final String annotation = in.readUTF();
+					coverages.computeIfAbsent(source, BeaconCoverage::new).add(dump, annotation);
+				}
+			}
+			Files.delete(file);
+		}
+		synchronized (lock) {
+			coverages.values().forEach(consumer);
+		}
+		return coverages.size();
+	}
+
+	private long[] spill(final Path directory, final int worker, final AtomicInteger nextDump) throws IOException {
+		final long[] counts = new long[partitions];
+		final DataOutputStream[] outs = new DataOutputStream[partitions];
+		try {
+			final BeaconLink[] batch = new BeaconLink[BATCH_SIZE];
+			int dump;
+			while ((dump = nextDump.getAndIncrement()) < dumps.size()) {
+				try (BeaconParser parser = open(dumps.get(dump))) {
+					final UriPattern prefix = compilePrefix(parser);
+					int n;
+					while ((n = parser.nextBatch(batch)) > 0) {
+						if (Thread.currentThread().isInterrupted()) {
+							throw new InterruptedIOException("Join interrupted");
+						}
+						for (int i = 0; i < n; i++) {
+							final String source = prefix.expand(batch[i].getSourceToken());
+							final int partition = (int) Math.floorMod(HyperLogLog.hash(source), (long) partitions);
+							if (outs[partition] == null) {
+								outs[partition] = new DataOutputStream(new BufferedOutputStream(
+										Files.newOutputStream(directory.resolve(partitionFileName(worker, partition))),
+										1 << 16));
+							}
+							final String annotation = batch[i].getAnnotationToken();
+							outs[partition].writeInt(dump);
+							outs[partition].writeUTF(source);
+							outs[partition].writeUTF(annotation == null ? "" : annotation);
+							counts[partition]++;
+						}
+					}
+				}
+			}
+		} finally {
+			for (final DataOutputStream out : outs) {
+				if (out != null) {
+					out.close();
+				}
+			}
+		}
+		return counts;
+	}
+
+	private static <T> T await(final Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static UriPattern compilePrefix(final BeaconParser parser) {
+		return UriPattern.compile(parser.getMetaFields().getValue(BeaconMetaField.PREFIX));
+	}
+
+	private static void awaitTermination(final ExecutorService executor) throws IOException {
+		try {
+			while (!executor.awaitTermination(1L, TimeUnit.MINUTES)) {
+				// Keep waiting: spill files cannot be deleted while workers still create them
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for workers to stop");
+		}
+	}
+
+	private static void delete(final Path directory) throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (final Path path : stream) {
+				Files.delete(path);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	private static BeaconParser open(final Path dump) throws IOException {
+		return new BeaconParser(Files.newBufferedReader(dump, StandardCharsets.UTF_8));
+	}
+
+	private static String partitionFileName(final int worker, final int partition) {
+		return String.format(Locale.ROOT, "%04d-%04d.bin", worker, partition);
+	}
+
+	/**
+	 * Sequential reader over a sorted dump, ordered by current source identifier and then by dump index.
+	 */
+	private static final class Cursor implements Comparable<Cursor>, Closeable {
+
+		private String annotation;
+
+		private final BeaconLink[] batch = new BeaconLink[BATCH_SIZE];
+
+		private final int dump;
+
+		private int index;
+
+		private int length;
+
+		private final BeaconParser parser;
+
+		private final Path path;
+
+		private final UriPattern prefix;
+
+		private String source;
+
+		Cursor(final int dump, final Path path) throws IOException {
+			this.dump = dump;
+			this.path = path;
+			parser = open(path);
+			prefix = compilePrefix(parser);
+		}
+
+		boolean advance() {
+			if (index == length) {
+				index = 0;
+				length = parser.nextBatch(batch);
+				if (length == 0) {
+					source = null;
+					return false;
+				}
+			}
+			final BeaconLink link = batch[index];
+			batch[index++] = null;
+			final String previous = source;
+			source = prefix.expand(link.getSourceToken());
+			annotation = link.getAnnotationToken();
+			if (previous != null && previous.compareTo(source) > 0) {
+				throw new IllegalArgumentException("Dump " + path + " is not sorted by source identifier: " + source
+						+ " follows " + previous + " near line " + parser.getLineNo());
+			}
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			parser.close();
+		}
+
+		@Override
+		public int compareTo(final Cursor other) {
+			final int comparison = source.compareTo(other.source);
+			return comparison != 0 ? comparison : Integer.compare(dump, other.dump);
+		}
+
+	}
+
+}
@@ -0,0 +1,356 @@
+package com.thunken.beacon;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Streaming exporter from BEACON dumps to line-based formats.
+ * <p>
+ * Links are pulled from a {@link BeaconParser} in batches, and each link is written directly from its tokens: URI
+ * patterns from link construction {@link BeaconMetaFields} are compiled once per dump into literal parts, and tokens
+ * are encoded and escaped into a single reusable output buffer. Exporting therefore runs in constant memory, and does
+ * not create any {@link java.net.URI} instance.
+ * <p>
+ * Note: the current Javadoc for this project is incomplete. We rely on
+ * <a href="https://projectlombok.org/" target="_top">Lombok</a> to generate boilerplate code, and Lombok does not plug
+ * into Javadoc. Generated methods and constructors are not included, and the Javadoc for other methods and constructors
+ * may be incomplete. See <a href="https://projectlombok.org/features/delombok" target="_top">delombok</a> and
+ * <a href="https://github.com/thunken/beacon/issues/1" target="_top">beacon#1</a> for more information.
+ *
+ * @see BeaconExporter.Format
+ * @see BeaconParser
+ */
+public final class BeaconExporter {
+
+	private static final int BATCH_SIZE = 1024;
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private static final int FLUSH_THRESHOLD = 1 << 16;
+
+	private final StringBuilder buffer = new StringBuilder(FLUSH_THRESHOLD + 1024);
+
+	private final Format format;
+
+	private BeaconMetaFields metaFields;
+
+	private String annotationProperty;
+
+	private UriPattern prefix, relation, target;
+
+	private long skipped;
+
+	public BeaconExporter(final Format format) {
+		this.format = Objects.requireNonNull(format, "format is null");
+	}
+
+	/**
+	 * Writes all remaining links from the specified parser to the specified writer. The writer is flushed, but not
+	 * closed.
+	 *
+	 * @param parser
+	 *            The parser to pull links from.
+	 * @param writer
+	 *            The writer to export links to.
+	 * @return The number of exported links.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws NullPointerException
+	 *             If {@code parser} or {@code writer} is null.
+	 */
+	public long export(final BeaconParser parser, final Writer writer) throws IOException {
+		return export(parser, writer, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Writes all remaining links from the specified parser to numbered part files in the specified directory, with at
+	 * most {@code linksPerFile} links per file. Part files are named {@code part-00000}, {@code part-00001}, and so on,
+	 * followed by the file extension for this exporter's {@link Format}, and can be loaded in parallel.
+	 *
+	 * @param parser
+	 *            The parser to pull links from.
+	 * @param directory
+	 *            The directory to create part files in.
+	 * @param linksPerFile
+	 *            The maximum number of links per part file.
+	 * @return The paths of the created part files.
+	 * @throws IllegalArgumentException
+	 *             If {@code linksPerFile} is not positive.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws NullPointerException
+	 *             If {@code parser} or {@code directory} is null.
+	 */
+	public List<Path> export(final BeaconParser parser, final Path directory, final long linksPerFile)
+			throws IOException {
+		Objects.requireNonNull(parser, "parser is null");
+		Objects.requireNonNull(directory, "directory is null");
+		if (linksPerFile <= 0) {
+			throw new IllegalArgumentException("linksPerFile must be positive");
+		}
+		Files.createDirectories(directory);
+		final List<Path> paths = new ArrayList<>();
+		while (parser.hasNext()) {
+			final Path path = directory
+					.resolve(String.format(Locale.ROOT, "part-%05d%s", paths.size(), format.getExtension()));
+			final long count;
+			try (Writer writer = new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8)) {
+				count = export(parser, writer, linksPerFile);
+			}
+			if (count > 0) {
+				paths.add(path);
+			} else {
+				// Only unparsable lines were left
+				Files.delete(path);
+			}
+		}
+		return paths;
+	}
+
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * Returns the number of links skipped so far because they cannot be written in this exporter's {@link Format},
+	 * e.g. links whose identifiers are relative IRIs in {@link Format#NTRIPLES}.
+	 *
+	 * @return The number of links skipped so far.
+	 */
+	public long getSkippedLinks() {
+		return skipped;
+	}
+
+	/**
+	 * Appends the specified link to the specified builder, and returns {@code false} if the link is skipped instead.
+	 */
+	boolean append(final StringBuilder builder, final BeaconLink link) {
+		if (link.getMetaFields() != metaFields) {
+			compile(link.getMetaFields());
+		}
+		final int start = builder.length();
+		final String annotation = link.getAnnotationToken() == null ? "" : link.getAnnotationToken();
+		switch (format) {
+		case NDJSON:
+			builder.append("{\"source\":\"");
+			prefix.expand(builder, link.getSourceToken());
+			builder.append("\",\"relation\":\"");
+			relation.expand(builder, annotation);
+			builder.append("\",\"target\":\"");
+			target.expand(builder, link.getTargetToken());
+			builder.append('"');
+			if (!annotation.isEmpty()) {
+				builder.append(",\"annotation\":\"");
+				appendJsonString(builder, annotation);
+				builder.append('"');
+			}
+			builder.append("}\n");
+			break;
+		case NTRIPLES:
+			// https://www.w3.org/TR/n-triples/#grammar-production-IRIREF: relative IRIs are not allowed
+			builder.append('<');
+			if (!expandAbsolute(builder, prefix, link.getSourceToken())) {
+				return skip(builder, start);
+			}
+			builder.append("> <");
+			if (!expandAbsolute(builder, relation, annotation)) {
+				return skip(builder, start);
+			}
+			builder.append("> <");
+			if (!expandAbsolute(builder, target, link.getTargetToken())) {
+				return skip(builder, start);
+			}
+			builder.append("> .\n");
+			if (annotationProperty != null && !annotation.isEmpty()) {
+				builder.append('<');
+				target.expand(builder, link.getTargetToken());
+				builder.append("> <").append(annotationProperty).append("> \"");
+				appendNTriplesString(builder, annotation);
+				builder.append("\" .\n");
+			}
+			break;
+		default:
+			throw new IllegalStateException("Unsupported format: " + format);
+		}
+		return true;
+	}
+
+	private void compile(final BeaconMetaFields metaFields) {
+		// Literal parts are percent-encoded once, the same way for all formats. Neither they nor expanded tokens then
+		// contain any character that needs escaping in JSON strings or N-Triples IRIs.
+		prefix = UriPattern.compile(metaFields.getValue(BeaconMetaField.PREFIX))
+				.withLiterals(BeaconExporter::encodeIri);
+		relation = UriPattern.compile(metaFields.getValue(BeaconMetaField.RELATION))
+				.withLiterals(BeaconExporter::encodeIri);
+		target = UriPattern.compile(metaFields.getValue(BeaconMetaField.TARGET))
+				.withLiterals(BeaconExporter::encodeIri);
+		annotationProperty = metaFields.isDefault(BeaconMetaField.ANNOTATION) ? null
+				: encodeIri(metaFields.getValue(BeaconMetaField.ANNOTATION));
+		this.metaFields = metaFields;
+	}
+
+	private boolean skip(final StringBuilder builder, final int start) {
+		builder.setLength(start);
+		skipped++;
+		return false;
+	}
+
+	private long export(final BeaconParser parser, final Writer writer, final long limit) throws IOException {
+		Objects.requireNonNull(parser, "parser is null");
+		Objects.requireNonNull(writer, "writer is null");
+		final BeaconLink[] links = new BeaconLink[(int) Math.min(BATCH_SIZE, limit)];
+		long count = 0;
+		buffer.setLength(0);
+		while (count < limit) {
+			final long remaining = limit - count;
+			final BeaconLink[] batch = remaining < links.length ? new BeaconLink[(int) remaining] : links;
+			final int n = parser.nextBatch(batch);
+			if (n == 0) {
+				break;
+			}
+			for (int i = 0; i < n; i++) {
+				if (append(buffer, batch[i])) {
+					count++;
+				}
+				if (buffer.length() >= FLUSH_THRESHOLD) {
+					writer.append(buffer);
+					buffer.setLength(0);
+				}
+			}
+		}
+		writer.append(buffer);
+		buffer.setLength(0);
+		writer.flush();
+		return count;
+	}
+
+	private static void appendJsonString(final StringBuilder builder, final String string) {
+		final int length = string.length();
+		for (int i = 0; i < length; i++) {
+			final char c = string.charAt(i);
+			if (c == '"' || c == '\\') {
+				builder.append('\\').append(c);
+			} else if (c < 0x20) {
+				appendUnicodeEscape(builder, c);
+			} else {
+				builder.append(c);
+			}
+		}
+	}
+
+	private static void appendNTriplesString(final StringBuilder builder, final String string) {
+		final int length = string.length();
+		for (int i = 0; i < length; i++) {
+			final char c = string.charAt(i);
+			switch (c) {
+			case '"':
+			case '\\':
+				builder.append('\\').append(c);
+				break;
+			case '\n':
+				builder.append("\\n");
+				break;
+			case '\r':
+				builder.append("\\r");
+				break;
+			default:
+				builder.append(c);
+				break;
+			}
+		}
+	}
+
+	private static void appendUnicodeEscape(final StringBuilder builder, final char c) {
+		builder.append("\\u").append(HEX[(c >> 12) & 0xF]).append(HEX[(c >> 8) & 0xF]).append(HEX[(c >> 4) & 0xF])
+				.append(HEX[c & 0xF]);
+	}
+
+	private static String encodeIri(final String iri) {
+		// https://www.w3.org/TR/n-triples/#grammar-production-IRIREF
+		// UCHAR escapes of these characters would still not form a valid IRI, so percent-encode them instead
+		final StringBuilder builder = new StringBuilder(iri.length());
+		final int length = iri.length();
+		for (int i = 0; i < length; i++) {
+			final char c = iri.charAt(i);
+			if (c <= 0x20 || "<>\"{}|^`\\".indexOf(c) >= 0) {
+				builder.append('%').append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+			} else {
+				builder.append(c);
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Expands the specified pattern into the specified builder, and returns {@code true} if the expanded IRI is
+	 * absolute, i.e. starts with a scheme.
+	 */
+	private static boolean expandAbsolute(final StringBuilder builder, final UriPattern pattern, final String token) {
+		final int start = builder.length();
+		pattern.expand(builder, token);
+		// https://tools.ietf.org/html/rfc3986#section-3.1
+		final int end = builder.length();
+		if (start == end || !isAlpha(builder.charAt(start))) {
+			return false;
+		}
+		for (int i = start + 1; i < end; i++) {
+			final char c = builder.charAt(i);
+			if (c == ':') {
+				return true;
+			}
+			if (!isAlpha(c) && (c < '0' || c > '9') && c != '+' && c != '-' && c != '.') {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isAlpha(final char c) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+	}
+
+	/**
+	 * Enumerated type for export formats.
+	 */
+	public enum Format {
+
+		/**
+		 * Newline-delimited JSON: one object per link, with {@code source}, {@code relation} and {@code target}
+		 * identifiers, and an {@code annotation} string if the link has a non-empty annotation token.
+		 *
+		 * @see <a href="http://ndjson.org/" target="_top">http://ndjson.org/</a>
+		 */
+		NDJSON(".ndjson"),
+
+		/**
+		 * N-Triples: one triple per link, plus one annotation triple if the link has a non-empty annotation token and
+		 * the {@link BeaconMetaField#ANNOTATION} meta field is set. N-Triples output is also valid Turtle. Links whose
+		 * source, relation or target identifier is not an absolute IRI are skipped, and counted by
+		 * {@link BeaconExporter#getSkippedLinks()}.
+		 *
+		 * @see <a href="https://gbv.github.io/beaconspec/beacon.html#mapping-to-rdf" target=
+		 *      "_top">https://gbv.github.io/beaconspec/beacon.html#mapping-to-rdf</a>
+		 */
+		NTRIPLES(".nt");
+
+		private final String extension;
+
+		Format(final String extension) {
+			this.extension = extension;
+		}
+
+		public String getExtension() {
+			return extension;
+		}
+
+	}
+
+}
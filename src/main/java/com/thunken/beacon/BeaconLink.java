@@ -12,6 +12,8 @@ import com.damnhandy.uri.template.UriTemplate;
  * <p>
  * Link construction rules are based on the value of link construction {@link BeaconMetaFields}.
  * <p>
+ * Links are immutable, and cache their hash code.
+ * <p>
  * Note: the current Javadoc for this project is incomplete. We rely on
  * <a href="https://projectlombok.org/" target="_top">Lombok</a> to generate boilerplate code, and Lombok does not plug
  * into Javadoc. Generated methods and constructors are not included, and the Javadoc for other methods and constructors
@@ -27,6 +29,8 @@ public final class BeaconLink {
 
 	private final String annotationToken;
 
+	private int hash;
+
 	private final BeaconMetaFields metaFields;
 
 	private final String sourceToken;
@@ -48,6 +52,9 @@ public final class BeaconLink {
 		}
 		if (object instanceof BeaconLink) {
 			final BeaconLink other = (BeaconLink) object;
+			if (hash != 0 && other.hash != 0 && hash != other.hash) {
+				return false;
+			}
 			return Objects.equals(sourceToken, other.sourceToken) //
 					&& Objects.equals(annotationToken, other.annotationToken) //
 					&& Objects.equals(targetToken, other.targetToken) //
@@ -123,12 +130,16 @@ public final class BeaconLink {
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = result * prime + sourceToken.hashCode();
-		result = result * prime + (annotationToken == null ? prime : annotationToken.hashCode());
-		result = result * prime + targetToken.hashCode();
-		result = result * prime + metaFields.hashCode();
+		int result = hash;
+		if (result == 0) {
+			final int prime = 31;
+			result = 1;
+			result = result * prime + sourceToken.hashCode();
+			result = result * prime + (annotationToken == null ? prime : annotationToken.hashCode());
+			result = result * prime + targetToken.hashCode();
+			result = result * prime + metaFields.hashCode();
+			hash = result;
+		}
 		return result;
 	}
 
@@ -0,0 +1,964 @@
+package com.thunken.beacon;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Persistent store of BEACON links keyed by source token, which can be updated incrementally.
+ * <p>
+ * The store is a log-structured merge tree of immutable segment files, each sorted by source, annotation and target
+ * token. {@link #load(BeaconParser)} sorts a full dump in runs and merges them into a new base segment, which
+ * supersedes all older segments. {@link #apply(Collection, Collection)} appends a delta segment of additions and
+ * removals, whose size is proportional to the change, not to the dump. {@link #lookup(String)} merges the base and
+ * delta segments. Once enough delta segments have accumulated, a background thread compacts all segments into a single
+ * base segment, at a configurable rate in bytes per second, while lookups and updates continue.
+ * <p>
+ * The list of live segments and the meta fields of the last loaded dump are recorded in a manifest file, which is
+ * replaced atomically after each change. Segments are reference-counted, so that compaction never deletes a segment
+ * that a lookup is still reading.
+ * <p>
+ * Note: the current Javadoc for this project is incomplete. We rely on
+ * <a href="https://projectlombok.org/" target="_top">Lombok</a> to generate boilerplate code, and Lombok does not plug
+ * into Javadoc. Generated methods and constructors are not included, and the Javadoc for other methods and constructors
+ * may be incomplete. See <a href="https://projectlombok.org/features/delombok" target="_top">delombok</a> and
+ * <a href="https://github.com/thunken/beacon/issues/1" target="_top">beacon#1</a> for more information.
+ *
+ * @see BeaconParser
+ */
+public class BeaconLinkStore implements Closeable {
+
+	public static final int DEFAULT_MAX_DELTAS = 8;
+
+	private static final byte ADD = 1, REMOVE = 0;
+
+	private static final int INDEX_INTERVAL = 128;
+
+	private static final int MAGIC = 0x4245434E; // BECN
+
+	private static final String MANIFEST = "MANIFEST";
+
+	private static final int RUN_SIZE = 1 << 20;
+
+	private static final String SEGMENT_PREFIX = "segment-", SEGMENT_SUFFIX = ".dat";
+
+	private final Object compactionLock = new Object();
+
+	private final long compactionBytesPerSecond;
+
+	private final Path directory;
+
+	private final ExecutorService executor;
+
+	private volatile Exception lastFailure;
+
+	private final int maxDeltas;
+
+	private volatile BeaconMetaFields metaFields;
+
+	private long nextSegmentId;
+
+	private final int runSize;
+
+	private volatile List<Segment> segments;
+
+	private final Object writeLock = new Object();
+
+	/**
+	 * Opens the store in the specified directory, or creates an empty store if the directory has no manifest.
+	 * Background compaction is not rate-limited, and starts once {@value #DEFAULT_MAX_DELTAS} delta segments have
+	 * accumulated.
+	 *
+	 * @param directory
+	 *            The store directory.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws NullPointerException
+	 *             If {@code directory} is null.
+	 */
+	public BeaconLinkStore(final Path directory) throws IOException {
+		this(directory, Long.MAX_VALUE, DEFAULT_MAX_DELTAS);
+	}
+
+	/**
+	 * Opens the store in the specified directory, or creates an empty store if the directory has no manifest.
+	 *
+	 * @param directory
+	 *            The store directory.
+	 * @param compactionBytesPerSecond
+	 *            The maximum number of bytes read and written per second by background compaction.
+	 * @param maxDeltas
+	 *            The number of delta segments that triggers background compaction.
+	 * @throws IllegalArgumentException
+	 *             If {@code compactionBytesPerSecond} or {@code maxDeltas} is not positive.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws NullPointerException
+	 *             If {@code directory} is null.
+	 */
+	public BeaconLinkStore(final Path directory, final long compactionBytesPerSecond, final int maxDeltas)
+			throws IOException {
+		this(directory, compactionBytesPerSecond, maxDeltas, RUN_SIZE);
+	}
+
+	BeaconLinkStore(final Path directory, final long compactionBytesPerSecond, final int maxDeltas,
+			final int runSize) throws IOException {
+		this.directory = Objects.requireNonNull(directory, "directory is null");
+		if (compactionBytesPerSecond <= 0) {
+			throw new IllegalArgumentException("compactionBytesPerSecond must be positive");
+		}
+		if (maxDeltas <= 0) {
+			throw new IllegalArgumentException("maxDeltas must be positive");
+		}
+		this.compactionBytesPerSecond = compactionBytesPerSecond;
+		this.maxDeltas = maxDeltas;
+		this.runSize = runSize;
+		Files.createDirectories(directory);
+		readManifest();
+		executor = Executors.newSingleThreadExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "beacon-link-store-compaction");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Appends a delta segment with the specified changes. Removals are applied before additions, and links are
+	 * identified by their source, annotation and target tokens; their meta fields are ignored.
+	 *
+	 * @param additions
+	 *            The links to add.
+	 * @param removals
+	 *            The links to remove.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws NullPointerException
+	 *             If {@code additions} or {@code removals} is null.
+	 */
+	public void apply(final Collection<BeaconLink> additions, final Collection<BeaconLink> removals)
+			throws IOException {
+		Objects.requireNonNull(additions, "additions is null");
+		Objects.requireNonNull(removals, "removals is null");
+		if (additions.isEmpty() && removals.isEmpty()) {
+			return;
+		}
+		final List<Record> records = new ArrayList<>(additions.size() + removals.size());
+		for (final BeaconLink link : removals) {
+			records.add(new Record(link, REMOVE));
+		}
+		for (final BeaconLink link : additions) {
+			records.add(new Record(link, ADD));
+		}
+		// Stable sort, so that additions come after removals of the same link
+		records.sort(null);
+		final int deltas;
+		synchronized (writeLock) {
+			final Segment segment = writeSegment(records, false);
+			final List<Segment> updated = new ArrayList<>(segments);
+			updated.add(segment);
+			publish(updated, metaFields);
+			// Loads and compactions write a single base segment, so all segments after it come from apply()
+			deltas = liveSegments(updated).size() - (lastBase(updated) < 0 ? 0 : 1);
+		}
+		if (deltas >= maxDeltas) {
+			compactInBackground();
+		}
+	}
+
+	/**
+	 * Stops background compaction and closes all segments. Compaction in progress is interrupted, and its partial
+	 * output is discarded.
+	 */
+	@Override
+	public void close() throws IOException {
+		executor.shutdownNow();
+		synchronized (compactionLock) {
+			synchronized (writeLock) {
+				for (final Segment segment : segments) {
+					segment.close();
+				}
+				segments = Collections.emptyList();
+			}
+		}
+	}
+
+	/**
+	 * Merges all live segments into a single base segment, in the current thread. Lookups and updates are not blocked
+	 * during compaction, and updates applied meanwhile are kept.
+	 *
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 */
+	public void compact() throws IOException {
+		synchronized (compactionLock) {
+			final List<Segment> current = acquire();
+			final Segment merged;
+			try {
+				final List<Segment> inputs = liveSegments(current);
+				if (inputs.size() <= 1) {
+					return;
+				}
+				merged = merge(inputs, new Throttle(compactionBytesPerSecond));
+			} finally {
+				release(current);
+			}
+			synchronized (writeLock) {
+				final List<Segment> live = segments;
+				if (live.size() < current.size() || !live.subList(0, current.size()).equals(current)) {
+					// A dump was loaded meanwhile
+					merged.release();
+					return;
+				}
+				final List<Segment> updated = new ArrayList<>();
+				updated.add(merged);
+				updated.addAll(live.subList(current.size(), live.size()));
+				publish(updated, metaFields);
+			}
+		}
+	}
+
+	/**
+	 * Starts compaction in the background thread, rate-limited to the configured number of bytes per second.
+	 *
+	 * @return A future that completes when compaction is done.
+	 */
+	public Future<?> compactInBackground() {
+		return executor.submit(() -> {
+			try {
+				compact();
+			} catch (final IOException | RuntimeException e) {
+				lastFailure = e;
+				throw e;
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Returns the last failure of background compaction, including compaction started by
+	 * {@link #apply(Collection, Collection)}, or of the deletion of an obsolete segment file. Segment files that could
+	 * not be deleted are deleted when the store is opened again.
+	 *
+	 * @return An {@link Optional} describing the last failure, or {@link Optional#empty()} if there was none.
+	 */
+	public Optional<Exception> getLastFailure() {
+		return Optional.ofNullable(lastFailure);
+	}
+
+	public BeaconMetaFields getMetaFields() {
+		return metaFields;
+	}
+
+	/**
+	 * Returns the number of live segments: the base segment from the last loaded dump or compaction, if any, followed
+	 * by delta segments.
+	 *
+	 * @return The number of live segments.
+	 */
+	public int getSegmentCount() {
+		return liveSegments(segments).size();
+	}
+
+	/**
+	 * Replaces the content of this store with all remaining links from the specified parser. The links are sorted in
+	 * runs of up to one million links each, which are then merged into a single base segment that supersedes all older
+	 * segments.
+	 *
+	 * @param parser
+	 *            The parser to pull links from.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws NullPointerException
+	 *             If {@code parser} is null.
+	 */
+	public void load(final BeaconParser parser) throws IOException {
+		Objects.requireNonNull(parser, "parser is null");
+		synchronized (writeLock) {
+			final List<Segment> runs = new ArrayList<>();
+			try {
+				final List<Record> records = new ArrayList<>();
+				final BeaconLink[] batch = new BeaconLink[1024];
+				int n;
+				while ((n = parser.nextBatch(batch)) > 0 || !records.isEmpty()) {
+					for (int i = 0; i < n; i++) {
+						records.add(new Record(batch[i], ADD));
+					}
+					if (records.size() >= runSize || n == 0) {
+						records.sort(null);
+						runs.add(writeSegment(records, true));
+						records.clear();
+					}
+				}
+				if (runs.isEmpty()) {
+					runs.add(writeSegment(records, true));
+				}
+				// Loading is not rate-limited, only background compaction is
+				final Segment base = runs.size() == 1 ? runs.remove(0) : merge(runs, new Throttle(Long.MAX_VALUE));
+				final List<Segment> updated = new ArrayList<>(segments);
+				updated.add(base);
+				publish(updated, parser.getMetaFields());
+			} finally {
+				// Runs are deleted once merged
+				release(runs);
+			}
+		}
+	}
+
+	/**
+	 * Returns the links with the specified source token.
+	 *
+	 * @param sourceToken
+	 *            A source token.
+	 * @return The links with the specified source token, built with the meta fields of the last loaded dump.
+	 * @throws NullPointerException
+	 *             If {@code sourceToken} is null.
+	 * @throws UncheckedIOException
+	 *             If an I/O error occurs.
+	 */
+	public List<BeaconLink> lookup(final String sourceToken) {
+		Objects.requireNonNull(sourceToken, "sourceToken is null");
+		final BeaconMetaFields fields = metaFields;
+		final List<Segment> current = acquire();
+		try {
+			final Map<Record, Boolean> links = new LinkedHashMap<>();
+			for (final Segment segment : liveSegments(current)) {
+				segment.lookup(sourceToken, record -> {
+					if (record.op == ADD) {
+						links.put(record, Boolean.TRUE);
+					} else {
+						links.remove(record);
+					}
+				});
+			}
+			final List<BeaconLink> result = new ArrayList<>(links.size());
+			for (final Record record : links.keySet()) {
+				result.add(new BeaconLink(record.source, record.annotation, record.target, fields));
+			}
+			return result;
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			release(current);
+		}
+	}
+
+	private List<Segment> acquire() {
+		while (true) {
+			final List<Segment> current = segments;
+			int acquired = 0;
+			while (acquired < current.size() && current.get(acquired).acquire()) {
+				acquired++;
+			}
+			if (acquired == current.size()) {
+				return current;
+			}
+			// A segment was released by compaction meanwhile
+			release(current.subList(0, acquired));
+		}
+	}
+
+	private Segment merge(final List<Segment> inputs, final Throttle throttle) throws IOException {
+		final List<Cursor> cursors = new ArrayList<>(inputs.size());
+		final PriorityQueue<Cursor> queue = new PriorityQueue<>();
+		try {
+			for (int i = 0; i < inputs.size(); i++) {
+				final Cursor cursor = new Cursor(inputs.get(i), i, throttle);
+				cursors.add(cursor);
+				if (cursor.advance()) {
+					queue.add(cursor);
+				}
+			}
+			final long id;
+			synchronized (writeLock) {
+				id = nextSegmentId++;
+			}
+			final Path path = directory.resolve(segmentFileName(id));
+			try (SegmentWriter writer = new SegmentWriter(path)) {
+				Record previous = null;
+				while (!queue.isEmpty()) {
+					if (Thread.interrupted()) {
+						throw new InterruptedIOException("Compaction interrupted");
+					}
+					final Cursor cursor = queue.poll();
+					final Record record = cursor.record;
+					// Cursors over newer segments come first for equal records, so the newest operation wins
+					if ((previous == null || previous.compareTo(record) != 0) && record.op == ADD) {
+						final long before = writer.size();
+						writer.write(record);
+						throttle.consume(writer.size() - before);
+					}
+					previous = record;
+					if (cursor.advance()) {
+						queue.add(cursor);
+					}
+				}
+			} catch (final IOException | RuntimeException e) {
+				Files.deleteIfExists(path);
+				throw e;
+			}
+			return new Segment(path, true);
+		} finally {
+			for (final Cursor cursor : cursors) {
+				cursor.close();
+			}
+		}
+	}
+
+	private void publish(final List<Segment> updated, final BeaconMetaFields updatedMetaFields) throws IOException {
+		// Drop segments superseded by the last base
+		final List<Segment> live = Collections.unmodifiableList(new ArrayList<>(liveSegments(updated)));
+		writeManifest(live, updatedMetaFields);
+		final List<Segment> previous = segments;
+		metaFields = updatedMetaFields;
+		segments = live;
+		final Set<Segment> retained = Collections.newSetFromMap(new IdentityHashMap<>());
+		retained.addAll(live);
+		for (final Segment segment : previous) {
+			if (!retained.contains(segment)) {
+				segment.release();
+			}
+		}
+	}
+
+	private void readManifest() throws IOException {
+		final Path manifest = directory.resolve(MANIFEST);
+		final List<Segment> live = new ArrayList<>();
+		final Map<BeaconMetaField, String> fields = new EnumMap<>(BeaconMetaField.class);
+		if (Files.exists(manifest)) {
+			try (DataInputStream in = new DataInputStream(Files.newInputStream(manifest))) {
+				if (in.readInt() != MAGIC) {
+					throw new IOException("Invalid manifest: " + manifest);
+				}
+				nextSegmentId = in.readLong();
+				for (int i = in.readInt(); i > 0; i--) {
+					fields.put(BeaconMetaField.valueOf(in.readUTF()), in.readUTF());
+				}
+				for (int i = in.readInt(); i > 0; i--) {
+					final String name = in.readUTF();
+					live.add(new Segment(directory.resolve(name), in.readBoolean()));
+				}
+			}
+		}
+		// Delete segments left over by interrupted writes or compactions
+		final Set<Path> paths = new HashSet<>();
+		for (final Segment segment : live) {
+			paths.add(segment.path);
+		}
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*")) {
+			for (final Path path : stream) {
+				if (!paths.contains(path)) {
+					Files.delete(path);
+				}
+			}
+		}
+		metaFields = new BeaconMetaFields(fields).freeze();
+		segments = Collections.unmodifiableList(live);
+	}
+
+	private void writeManifest(final List<Segment> live, final BeaconMetaFields fields) throws IOException {
+		final Path temporary = directory.resolve(MANIFEST + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(temporary.toFile());
+				DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out))) {
+			data.writeInt(MAGIC);
+			data.writeLong(nextSegmentId);
+			final List<BeaconMetaField> nonDefault = new ArrayList<>();
+			for (final BeaconMetaField field : BeaconMetaField.values()) {
+				if (!fields.isDefault(field)) {
+					nonDefault.add(field);
+				}
+			}
+			data.writeInt(nonDefault.size());
+			for (final BeaconMetaField field : nonDefault) {
+				data.writeUTF(field.name());
+				data.writeUTF(fields.getValue(field));
+			}
+			data.writeInt(live.size());
+			for (final Segment segment : live) {
+				data.writeUTF(segment.path.getFileName().toString());
+				data.writeBoolean(segment.base);
+			}
+			data.flush();
+			out.getChannel().force(true);
+		}
+		Files.move(temporary, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private Segment writeSegment(final List<Record> records, final boolean base) throws IOException {
+		final Path path = directory.resolve(segmentFileName(nextSegmentId++));
+		try (SegmentWriter writer = new SegmentWriter(path)) {
+			for (int i = 0; i < records.size(); i++) {
+				// Keep the last of equal records
+				if (i + 1 == records.size() || records.get(i).compareTo(records.get(i + 1)) != 0) {
+					writer.write(records.get(i));
+				}
+			}
+		}
+		return new Segment(path, base);
+	}
+
+	/**
+	 * Returns the index of the last base segment in the specified list, or -1 if there is none, e.g. in a store that
+	 * was only ever updated by {@link #apply(Collection, Collection)}.
+	 */
+	private static int lastBase(final List<Segment> list) {
+		for (int i = list.size() - 1; i >= 0; i--) {
+			if (list.get(i).base) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the segments of the specified list that are not superseded by a later base segment.
+	 */
+	private static List<Segment> liveSegments(final List<Segment> list) {
+		return list.subList(Math.max(lastBase(list), 0), list.size());
+	}
+
+	private static void release(final List<Segment> list) {
+		for (final Segment segment : list) {
+			segment.release();
+		}
+	}
+
+	private static String segmentFileName(final long id) {
+		return String.format(Locale.ROOT, "%s%016x%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * Buffered input stream over a range of a file channel, using positional reads so that several streams can read
+	 * the same channel concurrently.
+	 */
+	private static final class ChannelInputStream extends InputStream {
+
+		private final ByteBuffer buffer = ByteBuffer.allocate(1 << 13);
+
+		private final FileChannel channel;
+
+		private final long end;
+
+		private long position;
+
+		ChannelInputStream(final FileChannel channel, final long start, final long end) {
+			this.channel = channel;
+			position = start;
+			this.end = end;
+			buffer.limit(0);
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!buffer.hasRemaining() && !fill()) {
+				return -1;
+			}
+			return buffer.get() & 0xFF;
+		}
+
+		@Override
+		public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+			if (!buffer.hasRemaining() && !fill()) {
+				return -1;
+			}
+			final int n = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, n);
+			return n;
+		}
+
+		private boolean fill() throws IOException {
+			if (position >= end) {
+				return false;
+			}
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), end - position));
+			final int n = channel.read(buffer, position);
+			if (n < 0) {
+				throw new EOFException();
+			}
+			position += n;
+			buffer.flip();
+			return true;
+		}
+
+	}
+
+	/**
+	 * Sequential reader over a segment, ordered by current record and then by decreasing segment age.
+	 */
+	private static final class Cursor implements Comparable<Cursor>, Closeable {
+
+		private final int age;
+
+		private final DataInputStream in;
+
+		private Record record;
+
+		private long remaining;
+
+		private final Segment segment;
+
+		private final Throttle throttle;
+
+		Cursor(final Segment segment, final int age, final Throttle throttle) {
+			segment.acquire();
+			this.segment = segment;
+			this.age = age;
+			this.throttle = throttle;
+			in = new DataInputStream(new ChannelInputStream(segment.channel, 0L, segment.dataEnd));
+			remaining = segment.recordCount;
+		}
+
+		boolean advance() throws IOException {
+			if (remaining == 0) {
+				record = null;
+				close();
+				return false;
+			}
+			remaining--;
+			record = Record.read(in);
+			throttle.consume(record.size());
+			return true;
+		}
+
+		@Override
+		public void close() {
+			if (remaining >= 0) {
+				remaining = -1;
+				segment.release();
+			}
+		}
+
+		@Override
+		public int compareTo(final Cursor other) {
+			final int comparison = record.compareTo(other.record);
+			return comparison != 0 ? comparison : Integer.compare(other.age, age);
+		}
+
+	}
+
+	/**
+	 * Output stream that counts the bytes written through it.
+	 */
+	private static final class CountingOutputStream extends FilterOutputStream {
+
+		long count;
+
+		CountingOutputStream(final OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+			out.write(bytes, offset, length);
+			count += length;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+	}
+
+	/**
+	 * Link tokens with an operation. Equality and ordering only consider the tokens.
+	 */
+	private static final class Record implements Comparable<Record> {
+
+		private static final Comparator<Record> ORDER = Comparator.<Record, String>comparing(record -> record.source)
+				.thenComparing(record -> record.annotation).thenComparing(record -> record.target);
+
+		final String annotation;
+
+		final byte op;
+
+		final String source;
+
+		final String target;
+
+		Record(final BeaconLink link, final byte op) {
+			this(link.getSourceToken(), link.getAnnotationToken() == null ? "" : link.getAnnotationToken(),
+					link.getTargetToken(), op);
+		}
+
+		Record(final String source, final String annotation, final String target, final byte op) {
+			this.source = source;
+			this.annotation = annotation;
+			this.target = target;
+			this.op = op;
+		}
+
+		@Override
+		public int compareTo(final Record other) {
+			return ORDER.compare(this, other);
+		}
+
+		@Override
+		public boolean equals(final Object object) {
+			return object instanceof Record && compareTo((Record) object) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(source, annotation, target);
+		}
+
+		long size() {
+			// Approximate encoded size: operation, and length-prefixed modified UTF-8 strings
+			return 7L + source.length() + annotation.length() + target.length();
+		}
+
+		void write(final DataOutputStream out) throws IOException {
+			out.writeByte(op);
+			out.writeUTF(source);
+			out.writeUTF(annotation);
+			out.writeUTF(target);
+		}
+
+		static Record read(final DataInputStream in) throws IOException {
+			final byte op = in.readByte();
+			return new Record(in.readUTF(), in.readUTF(), in.readUTF(), op);
+		}
+
+	}
+
+	/**
+	 * Immutable segment file: sorted records, followed by a sparse index of source tokens and a fixed-size footer.
+	 */
+	private final class Segment implements Closeable {
+
+		final boolean base;
+
+		final FileChannel channel;
+
+		final long dataEnd;
+
+		final String[] indexKeys;
+
+		final long[] indexOffsets;
+
+		final Path path;
+
+		final long recordCount;
+
+		// The store holds one reference to each live segment
+		private final AtomicInteger references = new AtomicInteger(1);
+
+		Segment(final Path path, final boolean base) throws IOException {
+			this.path = path;
+			this.base = base;
+			channel = FileChannel.open(path, StandardOpenOption.READ);
+			try {
+				final long size = channel.size();
+				final ByteBuffer footer = ByteBuffer.allocate(SegmentWriter.FOOTER_SIZE);
+				channel.read(footer, size - SegmentWriter.FOOTER_SIZE);
+				footer.flip();
+				if (footer.getInt() != MAGIC) {
+					throw new IOException("Invalid segment: " + path);
+				}
+				dataEnd = footer.getLong();
+				recordCount = footer.getLong();
+				try (DataInputStream in = new DataInputStream(
+						new ChannelInputStream(channel, dataEnd, size - SegmentWriter.FOOTER_SIZE))) {
+					final int n = in.readInt();
+					indexKeys = new String[n];
+					indexOffsets = new long[n];
+					for (int i = 0; i < n; i++) {
+						indexKeys[i] = in.readUTF();
+						indexOffsets[i] = in.readLong();
+					}
+				}
+			} catch (final IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+		}
+
+		boolean acquire() {
+			int count;
+			do {
+				count = references.get();
+				if (count <= 0) {
+					return false;
+				}
+			} while (!references.compareAndSet(count, count + 1));
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+
+		void lookup(final String source, final Consumer<Record> consumer) throws IOException {
+			// Start from the last index entry strictly before the source token, since equal tokens may span entries
+			int low = 0, high = indexKeys.length - 1, block = 0;
+			while (low <= high) {
+				final int middle = (low + high) >>> 1;
+				if (indexKeys[middle].compareTo(source) < 0) {
+					block = middle;
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+			if (indexKeys.length == 0) {
+				return;
+			}
+			try (DataInputStream in = new DataInputStream(
+					new ChannelInputStream(channel, indexOffsets[block], dataEnd))) {
+				for (long i = (long) block * INDEX_INTERVAL; i < recordCount; i++) {
+					final Record record = Record.read(in);
+					final int comparison = record.source.compareTo(source);
+					if (comparison > 0) {
+						break;
+					}
+					if (comparison == 0) {
+						consumer.accept(record);
+					}
+				}
+			}
+		}
+
+		void release() {
+			if (references.decrementAndGet() == 0) {
+				try {
+					channel.close();
+					Files.deleteIfExists(path);
+				} catch (final IOException e) {
+					lastFailure = e;
+				}
+			}
+		}
+
+	}
+
+	private static final class SegmentWriter implements Closeable {
+
+		static final int FOOTER_SIZE = Integer.BYTES + 2 * Long.BYTES;
+
+		private final CountingOutputStream counter;
+
+		private final DataOutputStream data;
+
+		private final List<String> indexKeys = new ArrayList<>();
+
+		private final List<Long> indexOffsets = new ArrayList<>();
+
+		private final FileOutputStream out;
+
+		private long recordCount;
+
+		SegmentWriter(final Path path) throws IOException {
+			out = new FileOutputStream(path.toFile());
+			// DataOutputStream.size() saturates at 2 GiB, so count bytes before buffering instead
+			counter = new CountingOutputStream(new BufferedOutputStream(out, 1 << 16));
+			data = new DataOutputStream(counter);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				final long dataEnd = counter.count;
+				data.writeInt(indexKeys.size());
+				for (int i = 0; i < indexKeys.size(); i++) {
+					data.writeUTF(indexKeys.get(i));
+					data.writeLong(indexOffsets.get(i));
+				}
+				data.writeInt(MAGIC);
+				data.writeLong(dataEnd);
+				data.writeLong(recordCount);
+				data.flush();
+				out.getChannel().force(true);
+			} finally {
+				data.close();
+			}
+		}
+
+		long size() {
+			return counter.count;
+		}
+
+		void write(final Record record) throws IOException {
+			if (recordCount % INDEX_INTERVAL == 0) {
+				indexKeys.add(record.source);
+				indexOffsets.add(counter.count);
+			}
+			record.write(data);
+			recordCount++;
+		}
+
+	}
+
+	/**
+	 * Rate limiter for compaction I/O.
+	 */
+	private static final class Throttle {
+
+		private final long bytesPerSecond;
+
+		private long consumed;
+
+		private final long start = System.nanoTime();
+
+		Throttle(final long bytesPerSecond) {
+			this.bytesPerSecond = bytesPerSecond;
+		}
+
+		void consume(final long bytes) throws InterruptedIOException {
+			if (bytesPerSecond == Long.MAX_VALUE) {
+				return;
+			}
+			consumed += bytes;
+			final long due = (long) (consumed * 1e9 / bytesPerSecond) - (System.nanoTime() - start);
+			if (due > 1_000_000L) {
+				try {
+					Thread.sleep(due / 1_000_000L);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Compaction interrupted");
+				}
+			}
+		}
+
+	}
+
+}
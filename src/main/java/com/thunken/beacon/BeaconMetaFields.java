@@ -1,11 +1,13 @@
 package com.thunken.beacon;
 
+import java.lang.ref.WeakReference;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -15,6 +17,11 @@ import java.util.stream.Collectors;
  * generated by that parser. Therefore, for the sake of consistency, the public API for this class only includes
  * read-only methods.
  * <p>
+ * Once a {@link BeaconParser} has read the meta lines, its {@link BeaconMetaFields} instance is frozen: it is interned
+ * in a canonical registry, so that all parsers reading dumps with the same meta fields share a single instance, and its
+ * hash code is computed once. Comparing two frozen instances is an identity check, which keeps
+ * {@link BeaconLink#equals(Object)} and {@link BeaconLink#hashCode()} cheap.
+ * <p>
  * Note: the current Javadoc for this project is incomplete. We rely on
  * <a href="https://projectlombok.org/" target="_top">Lombok</a> to generate boilerplate code, and Lombok does not plug
  * into Javadoc. Generated methods and constructors are not included, and the Javadoc for other methods and constructors
@@ -25,27 +32,48 @@ import java.util.stream.Collectors;
  */
 public final class BeaconMetaFields {
 
+	// Canonical frozen instances, weakly referenced so that unused meta fields can be garbage collected
+	private static final Map<BeaconMetaFields, WeakReference<BeaconMetaFields>> CANONICAL = new WeakHashMap<>();
+
 	private final Map<BeaconMetaField, String> fields = new EnumMap<>(BeaconMetaField.class);
 
+	private final boolean frozen;
+
+	private final int hash;
+
 	public BeaconMetaFields() {
-		/* NO OP */
+		frozen = false;
+		hash = 0;
 	}
 
 	public BeaconMetaFields(final BeaconMetaFields metaFields) {
+		this();
 		putAll(metaFields);
 	}
 
 	public BeaconMetaFields(final Map<BeaconMetaField, String> map) {
+		this();
 		putAll(map);
 	}
 
+	private BeaconMetaFields(final Map<BeaconMetaField, String> fields, final boolean frozen) {
+		this.fields.putAll(fields);
+		this.frozen = frozen;
+		hash = fields.hashCode();
+	}
+
 	@Override
 	public boolean equals(final Object object) {
 		if (this == object) {
 			return true;
 		}
 		if (object instanceof BeaconMetaFields) {
-			return fields.equals(((BeaconMetaFields) object).fields);
+			final BeaconMetaFields other = (BeaconMetaFields) object;
+			if (frozen && other.frozen) {
+				// Frozen instances are canonical
+				return false;
+			}
+			return fields.equals(other.fields);
 		}
 		return false;
 	}
@@ -82,7 +110,7 @@ public final class BeaconMetaFields {
 
 	@Override
 	public int hashCode() {
-		return fields.hashCode();
+		return frozen ? hash : fields.hashCode();
 	}
 
 	/**
@@ -97,13 +125,41 @@ public final class BeaconMetaFields {
 		return fields.containsKey(field) ? fields.get(field).equals(field.getDefaultValue()) : true;
 	}
 
+	/**
+	 * Returns {@code true} if this instance is frozen, i.e. immutable and canonical.
+	 *
+	 * @return {@code true} if this instance is frozen.
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
 	@Override
 	public String toString() {
 		return Arrays.stream(BeaconMetaField.values()).map(field -> (field + "=" + getValue(field)))
 				.collect(Collectors.joining(", ", "{", "}"));
 	}
 
+	/**
+	 * Returns the canonical frozen instance equal to this instance, creating and registering it if needed.
+	 */
+	BeaconMetaFields freeze() {
+		if (frozen) {
+			return this;
+		}
+		synchronized (CANONICAL) {
+			final WeakReference<BeaconMetaFields> reference = CANONICAL.get(this);
+			BeaconMetaFields canonical = reference == null ? null : reference.get();
+			if (canonical == null) {
+				canonical = new BeaconMetaFields(fields, true);
+				CANONICAL.put(canonical, new WeakReference<>(canonical));
+			}
+			return canonical;
+		}
+	}
+
 	void put(final BeaconMetaField field, final String value) {
+		checkNotFrozen();
 		Objects.requireNonNull(field, "field is null");
 		Objects.requireNonNull(value, "value is null");
 		if (!field.test(value)) {
@@ -115,6 +171,7 @@ public final class BeaconMetaFields {
 	}
 
 	void putAll(final BeaconMetaFields metaFields) {
+		checkNotFrozen();
 		Objects.requireNonNull(metaFields, "metaFields is null");
 		fields.putAll(metaFields.fields);
 	}
@@ -126,4 +183,10 @@ public final class BeaconMetaFields {
 		}
 	}
 
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new IllegalStateException("Meta fields are frozen");
+		}
+	}
+
 }
@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.UncheckedIOException;
 import java.text.Normalizer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -45,8 +46,6 @@ public class BeaconParser implements Closeable, Iterator<Optional<BeaconLink>> {
 
 	private static final String DEFAULT_ANNOTATION = "";
 
-	private static final Pattern HTTPX = Pattern.compile("^https?:", Pattern.CASE_INSENSITIVE);
-
 	private static final Pattern METALINE = Pattern.compile("#([A-Z]+)[:\\h]\\h*(.*)$");
 
 	// Broader than https://gbv.github.io/beaconspec/beacon.html#whitespace-normalization
@@ -54,11 +53,13 @@ public class BeaconParser implements Closeable, Iterator<Optional<BeaconLink>> {
 
 	private final BufferedReader bufferedReader;
 
+	private final List<BeaconTokenFilter> filters = new ArrayList<>();
+
 	private String line;
 
 	private int lineNo;
 
-	private final BeaconMetaFields metaFields = new BeaconMetaFields();
+	private final BeaconMetaFields metaFields;
 
 	private final int offset;
 
@@ -102,7 +103,7 @@ public class BeaconParser implements Closeable, Iterator<Optional<BeaconLink>> {
 		Objects.requireNonNull(reader, "reader is null");
 		Objects.requireNonNull(defaults, "defaults is null");
 		bufferedReader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
-		metaFields.putAll(defaults);
+		final BeaconMetaFields fields = new BeaconMetaFields(defaults);
 		// https://gbv.github.io/beaconspec/beacon.html#beacon-format
 		// Parse meta lines
 		final Set<BeaconMetaField> seen = EnumSet.noneOf(BeaconMetaField.class);
@@ -135,9 +136,10 @@ public class BeaconParser implements Closeable, Iterator<Optional<BeaconLink>> {
 			default:
 				break;
 			}
-			metaFields.put(metaField, metaValue);
+			fields.put(metaField, metaValue);
 			seen.add(metaField);
 		}
+		metaFields = fields.freeze();
 		// Discard empty lines
 		while (line != null && normalize(line, null) == null) {
 			readLine();
@@ -145,6 +147,21 @@ public class BeaconParser implements Closeable, Iterator<Optional<BeaconLink>> {
 		offset = getLineNo() - 1;
 	}
 
+	/**
+	 * Adds a filter on link tokens. Lines whose links are rejected by any filter are skipped by
+	 * {@link #nextBatch(BeaconLink[])}, and turned into {@link Optional#empty()} by {@link #next()}. Filters are
+	 * evaluated on the raw line whenever possible, so rejected lines are usually not tokenized.
+	 *
+	 * @param filter
+	 *            The filter to add.
+	 * @throws NullPointerException
+	 *             If {@code filter} is null.
+	 * @see BeaconTokenFilter
+	 */
+	public void addFilter(final BeaconTokenFilter filter) {
+		filters.add(Objects.requireNonNull(filter, "filter is null"));
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -184,7 +201,7 @@ public class BeaconParser implements Closeable, Iterator<Optional<BeaconLink>> {
 
 	/**
 	 * Returns an {@link Optional} describing the next {@link BeaconLink} in the underlying BEACON dump, or
-	 * {@link Optional#empty()} if the corresponding line cannot be parsed.
+	 * {@link Optional#empty()} if the corresponding line cannot be parsed or is rejected by a filter.
 	 *
 	 * @return An {@link Optional} describing the next {@link BeaconLink} in the underlying BEACON dump, or
 	 *         {@link Optional#empty()} if the corresponding line cannot be parsed.
@@ -197,9 +214,45 @@ public class BeaconParser implements Closeable, Iterator<Optional<BeaconLink>> {
 		if (!hasNext()) {
 			throw new NoSuchElementException();
 		}
-		final Optional<BeaconLink> link = parseLine(line, metaFields);
+		final BeaconLink link = parseLink();
 		readLine();
-		return link;
+		return Optional.ofNullable(link);
+	}
+
+	/**
+	 * Fills the specified array with the next {@link BeaconLink} instances in the underlying BEACON dump, and returns
+	 * the number of links written to the array. Lines that cannot be parsed are skipped, so the returned number may be
+	 * smaller than the array length only if the underlying BEACON dump has no more links. Lines rejected by a filter
+	 * are skipped as well.
+	 * <p>
+	 * This method is an alternative to {@link #hasNext()} and {@link #next()} for callers that process links in
+	 * batches: the array can be reused from one call to the next, and no {@link Optional} is created for each link.
+	 * After this method returns, {@link #getLineNo()} and {@link #getLinkNo()} refer to the first line not yet
+	 * consumed.
+	 *
+	 * @param links
+	 *            The array into which links are written, starting at index 0.
+	 * @return The number of links written to the array, or 0 if the underlying BEACON dump has no more links.
+	 * @throws IllegalArgumentException
+	 *             If {@code links} is empty.
+	 * @throws NullPointerException
+	 *             If {@code links} is null.
+	 * @see BeaconParser#parseLine(String, BeaconMetaFields)
+	 */
+	public int nextBatch(final BeaconLink[] links) {
+		Objects.requireNonNull(links, "links is null");
+		if (links.length == 0) {
+			throw new IllegalArgumentException("links is empty");
+		}
+		int count = 0;
+		while (count < links.length && line != null) {
+			final BeaconLink link = parseLink();
+			if (link != null) {
+				links[count++] = link;
+			}
+			readLine();
+		}
+		return count;
 	}
 
 	/**
@@ -212,6 +265,10 @@ public class BeaconParser implements Closeable, Iterator<Optional<BeaconLink>> {
 		throw new UnsupportedOperationException("remove");
 	}
 
+	private BeaconLink parseLink() {
+		return parseLink(line, metaFields, filters);
+	}
+
 	private String readLine() {
 		try {
 			if ((line = bufferedReader.readLine()) != null) {
@@ -223,6 +280,37 @@ public class BeaconParser implements Closeable, Iterator<Optional<BeaconLink>> {
 		return line;
 	}
 
+	/**
+	 * Parses a BEACON link line and returns the corresponding {@link BeaconLink}, or null if the line cannot be parsed
+	 * or is rejected by a filter. Filters are evaluated on the raw line first, and only re-evaluated on the parsed link
+	 * if they cannot decide on the raw line.
+	 */
+	static BeaconLink parseLink(final String line, final BeaconMetaFields metaFields,
+			final List<BeaconTokenFilter> filters) {
+		boolean parsed = true;
+		for (int i = 0; i < filters.size(); i++) {
+			switch (filters.get(i).test(line, metaFields)) {
+			case REJECT:
+				return null;
+			case UNKNOWN:
+				parsed = false;
+				break;
+			default:
+				break;
+			}
+		}
+		final BeaconLink link = parseLink(line, metaFields);
+		if (link != null && !parsed) {
+			// Some filters could not be evaluated on the raw line
+			for (int i = 0; i < filters.size(); i++) {
+				if (!filters.get(i).test(link)) {
+					return null;
+				}
+			}
+		}
+		return link;
+	}
+
 	/**
 	 * Parses a BEACON link line and returns an {@link Optional} describing the corresponding {@link BeaconLink}, or
 	 * {@link Optional#empty()} if the line cannot be parsed into a valid link.
@@ -243,7 +331,15 @@ public class BeaconParser implements Closeable, Iterator<Optional<BeaconLink>> {
 	public static Optional<BeaconLink> parseLine(final String linkLine, final BeaconMetaFields metaFields) {
 		Objects.requireNonNull(linkLine, "linkLine is null");
 		Objects.requireNonNull(metaFields, "metaFields is null");
+		return Optional.ofNullable(parseLink(linkLine, metaFields));
+	}
+
+	static BeaconLink parseLink(final String linkLine, final BeaconMetaFields metaFields) {
 		final String[] tokens = tokenize(linkLine);
+		if (tokens == null) {
+			// TODO warn
+			return null;
+		}
 		final String source, annotation, target;
 		switch (tokens.length) {
 		case 1:
@@ -251,7 +347,7 @@ public class BeaconParser implements Closeable, Iterator<Optional<BeaconLink>> {
 			annotation = DEFAULT_ANNOTATION;
 			break;
 		case 2:
-			if (metaFields.isDefault(BeaconMetaField.TARGET) && tokens[1] != null && HTTPX.matcher(tokens[1]).find()) {
+			if (metaFields.isDefault(BeaconMetaField.TARGET) && tokens[1] != null && isHttpx(tokens[1])) {
 				source = tokens[0];
 				annotation = DEFAULT_ANNOTATION;
 				target = tokens[1];
@@ -260,18 +356,18 @@ public class BeaconParser implements Closeable, Iterator<Optional<BeaconLink>> {
 				annotation = tokens[1];
 			}
 			break;
-		case 3:
+		default:
 			source = tokens[0];
 			annotation = tokens[1];
 			target = tokens[2];
 			break;
-		default:
-			// TODO warn
-			return Optional.empty();
 		}
-		return source == null || target == null ? Optional.empty()
-				: Optional.of(new BeaconLink(source, Optional.ofNullable(annotation).orElse(DEFAULT_ANNOTATION), target,
-						metaFields));
+		return source == null || target == null ? null
+				: new BeaconLink(source, annotation == null ? DEFAULT_ANNOTATION : annotation, target, metaFields);
+	}
+
+	private static boolean isHttpx(final String token) {
+		return token.regionMatches(true, 0, "http:", 0, 5) || token.regionMatches(true, 0, "https:", 0, 6);
 	}
 
 	private static String normalize(final String string, final String defaultValue) {
@@ -299,11 +395,32 @@ public class BeaconParser implements Closeable, Iterator<Optional<BeaconLink>> {
 		Objects.requireNonNull(string, "string is null");
 		// https://gbv.github.io/beaconspec/beacon.html#beacon-format
 		// https://gbv.github.io/beaconspec/beacon.html#links
-		final String[] tokens = string.split("\\|", -1);
-		for (int i = 0; i < tokens.length; i++) {
-			tokens[i] = normalize(tokens[i], null);
+		final int first = string.indexOf('|');
+		final int second = first < 0 ? -1 : string.indexOf('|', first + 1);
+		if (second >= 0 && string.indexOf('|', second + 1) >= 0) {
+			// Too many tokens: rejected before any token is split or normalized
+			return null;
+		}
+		if (first < 0) {
+			return new String[] { normalizeToken(string, 0, string.length()) };
+		}
+		if (second < 0) {
+			return new String[] { normalizeToken(string, 0, first),
+					normalizeToken(string, first + 1, string.length()) };
+		}
+		return new String[] { normalizeToken(string, 0, first), normalizeToken(string, first + 1, second),
+				normalizeToken(string, second + 1, string.length()) };
+	}
+
+	private static String normalizeToken(final String string, final int start, final int end) {
+		for (int i = start; i < end; i++) {
+			final char c = string.charAt(i);
+			if (c <= ' ' || c > '~') {
+				return normalize(string.substring(start, end), null);
+			}
 		}
-		return tokens;
+		// Printable ASCII other than space is left unchanged by whitespace normalization and NFKC
+		return start == end ? null : string.substring(start, end);
 	}
 
 }
@@ -0,0 +1,228 @@
+package com.thunken.beacon;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Summary of a BEACON dump file, obtained without parsing links: the meta fields are read from the meta lines only,
+ * and links are counted with a raw scan for line feeds over the memory-mapped file, eight bytes at a time, without
+ * decoding any character.
+ * <p>
+ * The link count is the number of lines after the meta lines and the empty lines that follow them, including lines
+ * that cannot be parsed into valid links. In other words, it is the number of times {@link BeaconParser#next()} can be
+ * called. Lines are expected to be terminated by a line feed, optionally preceded by a carriage return.
+ * <p>
+ * Note: the current Javadoc for this project is incomplete. We rely on
+ * <a href="https://projectlombok.org/" target="_top">Lombok</a> to generate boilerplate code, and Lombok does not plug
+ * into Javadoc. Generated methods and constructors are not included, and the Javadoc for other methods and constructors
+ * may be incomplete. See <a href="https://projectlombok.org/features/delombok" target="_top">delombok</a> and
+ * <a href="https://github.com/thunken/beacon/issues/1" target="_top">beacon#1</a> for more information.
+ *
+ * @see BeaconParser
+ */
+public final class BeaconProbe {
+
+	private static final long SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+	private static final long LINE_FEEDS = 0x0A0A0A0A0A0A0A0AL;
+
+	private static final int MAX_MAPPING = 1 << 30;
+
+	private final long byteCount;
+
+	private final long linkCount;
+
+	private final BeaconMetaFields metaFields;
+
+	private BeaconProbe(final BeaconMetaFields metaFields, final long linkCount, final long byteCount) {
+		this.metaFields = metaFields;
+		this.linkCount = linkCount;
+		this.byteCount = byteCount;
+	}
+
+	public long getByteCount() {
+		return byteCount;
+	}
+
+	public long getLinkCount() {
+		return linkCount;
+	}
+
+	public BeaconMetaFields getMetaFields() {
+		return metaFields;
+	}
+
+	@Override
+	public String toString() {
+		return "{metaFields=" + metaFields + ", linkCount=" + linkCount + ", byteCount=" + byteCount + "}";
+	}
+
+	/**
+	 * Probes the specified BEACON dump file in the current thread.
+	 *
+	 * @param path
+	 *            A BEACON dump file, encoded in UTF-8.
+	 * @return The meta fields, link count and byte count of the specified file.
+	 * @throws BeaconFormatException
+	 *             If the meta lines violate the BEACON specification.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws NullPointerException
+	 *             If {@code path} is null.
+	 */
+	public static BeaconProbe probe(final Path path) throws IOException {
+		return probe(path, 1);
+	}
+
+	/**
+	 * Probes the specified BEACON dump file, splitting the line count across the specified number of threads.
+	 *
+	 * @param path
+	 *            A BEACON dump file, encoded in UTF-8.
+	 * @param threads
+	 *            The number of threads to count lines with.
+	 * @return The meta fields, link count and byte count of the specified file.
+	 * @throws BeaconFormatException
+	 *             If the meta lines violate the BEACON specification.
+	 * @throws IllegalArgumentException
+	 *             If {@code threads} is not positive.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws NullPointerException
+	 *             If {@code path} is null.
+	 */
+	public static BeaconProbe probe(final Path path, final int threads) throws IOException {
+		Objects.requireNonNull(path, "path is null");
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be positive");
+		}
+		final BeaconMetaFields metaFields;
+		final long headerLines;
+		try (BeaconParser parser = new BeaconParser(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+			metaFields = parser.getMetaFields();
+			headerLines = parser.hasNext() ? parser.getLineNo() - 1 : -1L;
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (headerLines < 0) {
+				return new BeaconProbe(metaFields, 0L, size);
+			}
+			long lines = threads == 1 ? countLineFeeds(channel, 0L, size) : countLineFeeds(channel, size, threads);
+			if (size > 0 && !endsWithLineFeed(channel, size)) {
+				lines++;
+			}
+			return new BeaconProbe(metaFields, lines - headerLines, size);
+		}
+	}
+
+	/**
+	 * Reads the meta fields of the specified BEACON dump file. Only the meta lines are read.
+	 *
+	 * @param path
+	 *            A BEACON dump file, encoded in UTF-8.
+	 * @return The meta fields of the specified file.
+	 * @throws BeaconFormatException
+	 *             If the meta lines violate the BEACON specification.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws NullPointerException
+	 *             If {@code path} is null.
+	 */
+	public static BeaconMetaFields readMetaFields(final Path path) throws IOException {
+		Objects.requireNonNull(path, "path is null");
+		try (BeaconParser parser = new BeaconParser(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+			return parser.getMetaFields();
+		}
+	}
+
+	/**
+	 * Returns the number of line feeds in the remaining bytes of the specified buffer, and leaves its position
+	 * unchanged.
+	 */
+	static long countLineFeeds(final ByteBuffer buffer) {
+		final ByteBuffer bytes = buffer.duplicate().order(ByteOrder.nativeOrder());
+		final int limit = bytes.limit();
+		int i = bytes.position();
+		long count = 0L;
+		for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+			count += Long.bitCount(zeroBytes(bytes.getLong(i) ^ LINE_FEEDS));
+		}
+		for (; i < limit; i++) {
+			if (bytes.get(i) == '\n') {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	static long countLineFeeds(final FileChannel channel, final long start, final long end) throws IOException {
+		long count = 0L;
+		for (long position = start; position < end; position += MAX_MAPPING) {
+			count += countLineFeeds(
+					channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_MAPPING, end - position)));
+		}
+		return count;
+	}
+
+	private static long countLineFeeds(final FileChannel channel, final long size, final int threads)
+			throws IOException {
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final long chunk = (size + threads - 1) / threads;
+			final List<Future<Long>> futures = new ArrayList<>(threads);
+			for (long start = 0L; start < size; start += chunk) {
+				final long from = start, to = Math.min(size, start + chunk);
+				futures.add(executor.submit(() -> countLineFeeds(channel, from, to)));
+			}
+			long count = 0L;
+			for (final Future<Long> future : futures) {
+				count += future.get();
+			}
+			return count;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static boolean endsWithLineFeed(final FileChannel channel, final long size) throws IOException {
+		final ByteBuffer last = ByteBuffer.allocate(1);
+		channel.read(last, size - 1);
+		return last.get(0) == '\n';
+	}
+
+	/**
+	 * Returns a word with the high bit set in each byte that is zero in the specified word, and all other bits
+	 * cleared. Unlike the usual {@code (x - 0x01..) & ~x & 0x80..} test, there is no false positive, so the result can
+	 * be counted.
+	 */
+	private static long zeroBytes(final long x) {
+		final long y = (x & SEVEN_BITS) + SEVEN_BITS;
+		return ~(y | x | SEVEN_BITS);
+	}
+
+}
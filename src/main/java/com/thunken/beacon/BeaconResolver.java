@@ -0,0 +1,463 @@
+package com.thunken.beacon;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Embeddable in-process resolver that serves lookups of links by source token from one or more BEACON dumps.
+ * <p>
+ * Each registered dump is held as an immutable snapshot that maps source tokens to links. Reloading a dump builds a
+ * new snapshot in a background thread with a {@link BeaconParser}, then swaps it in with a single volatile write:
+ * lookups never take a lock, and keep being served from the previous snapshot until the new one is complete. Dumps
+ * whose {@link BeaconMetaField#UPDATE} meta field specifies a finite, non-zero interval are reloaded automatically at
+ * that interval. If a reload fails, the previous snapshot is kept, and the failure is reported by
+ * {@link #getLastReloadFailure(String)}.
+ * <p>
+ * The latency of every lookup is recorded in a {@link LatencyHistogram}.
+ * <p>
+ * Note: the current Javadoc for this project is incomplete. We rely on
+ * <a href="https://projectlombok.org/" target="_top">Lombok</a> to generate boilerplate code, and Lombok does not plug
+ * into Javadoc. Generated methods and constructors are not included, and the Javadoc for other methods and constructors
+ * may be incomplete. See <a href="https://projectlombok.org/features/delombok" target="_top">delombok</a> and
+ * <a href="https://github.com/thunken/beacon/issues/1" target="_top">beacon#1</a> for more information.
+ *
+ * @see BeaconResolverServer
+ */
+public class BeaconResolver implements Closeable {
+
+	private static final int BATCH_SIZE = 1024;
+
+	private final ConcurrentMap<String, Dump> dumps = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService executor;
+
+	private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+	public BeaconResolver() {
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "beacon-resolver");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Stops reloading dumps. Lookups can still be served from the current snapshots.
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	public Set<String> getDumpNames() {
+		return Collections.unmodifiableSet(dumps.keySet());
+	}
+
+	/**
+	 * Returns the last failure to load the specified dump, whether the reload was scheduled or requested with
+	 * {@link #reload(String)}. The failure is kept after later successful reloads: compare its time with
+	 * {@link #getLoadTime(String)} to tell whether the current snapshot is stale.
+	 *
+	 * @param name
+	 *            The name of a registered dump.
+	 * @return An {@link Optional} describing the last reload failure, or {@link Optional#empty()} if there was none.
+	 * @throws IllegalArgumentException
+	 *             If no dump is registered with the specified name.
+	 */
+	public Optional<ReloadFailure> getLastReloadFailure(final String name) {
+		return Optional.ofNullable(getDump(name).lastFailure);
+	}
+
+	public LatencyHistogram getLatencyHistogram() {
+		return latencyHistogram;
+	}
+
+	/**
+	 * Returns the time at which the current snapshot of the specified dump finished loading.
+	 *
+	 * @param name
+	 *            The name of a registered dump.
+	 * @return The time at which the current snapshot of the specified dump finished loading.
+	 * @throws IllegalArgumentException
+	 *             If no dump is registered with the specified name.
+	 */
+	public Instant getLoadTime(final String name) {
+		return getDump(name).snapshot.loadTime;
+	}
+
+	/**
+	 * Returns the meta fields of the current snapshot of the specified dump.
+	 *
+	 * @param name
+	 *            The name of a registered dump.
+	 * @return The meta fields of the current snapshot of the specified dump.
+	 * @throws IllegalArgumentException
+	 *             If no dump is registered with the specified name.
+	 */
+	public BeaconMetaFields getMetaFields(final String name) {
+		return getDump(name).snapshot.metaFields;
+	}
+
+	/**
+	 * Returns the links with the specified source token in all registered dumps, by dump name. Dumps without such
+	 * links are omitted.
+	 *
+	 * @param sourceToken
+	 *            A source token.
+	 * @return The links with the specified source token, by dump name.
+	 * @throws NullPointerException
+	 *             If {@code sourceToken} is null.
+	 */
+	public Map<String, List<BeaconLink>> lookup(final String sourceToken) {
+		Objects.requireNonNull(sourceToken, "sourceToken is null");
+		final long start = System.nanoTime();
+		final Map<String, List<BeaconLink>> result = new LinkedHashMap<>();
+		for (final Map.Entry<String, Dump> entry : dumps.entrySet()) {
+			final BeaconLink[] links = entry.getValue().snapshot.links.get(sourceToken);
+			if (links != null) {
+				result.put(entry.getKey(), Collections.unmodifiableList(Arrays.asList(links)));
+			}
+		}
+		latencyHistogram.record(System.nanoTime() - start);
+		return result;
+	}
+
+	/**
+	 * Returns the links with the specified source token in the specified dump.
+	 *
+	 * @param name
+	 *            The name of a registered dump.
+	 * @param sourceToken
+	 *            A source token.
+	 * @return The links with the specified source token, or an empty list if there is none.
+	 * @throws IllegalArgumentException
+	 *             If no dump is registered with the specified name.
+	 * @throws NullPointerException
+	 *             If {@code name} or {@code sourceToken} is null.
+	 */
+	public List<BeaconLink> lookup(final String name, final String sourceToken) {
+		Objects.requireNonNull(sourceToken, "sourceToken is null");
+		final long start = System.nanoTime();
+		final BeaconLink[] links = getDump(name).snapshot.links.get(sourceToken);
+		final List<BeaconLink> result = links == null ? Collections.emptyList()
+				: Collections.unmodifiableList(Arrays.asList(links));
+		latencyHistogram.record(System.nanoTime() - start);
+		return result;
+	}
+
+	/**
+	 * Registers a dump, and loads its first snapshot in the current thread. If a dump is already registered with the
+	 * same name, it is replaced.
+	 *
+	 * @param name
+	 *            The dump name.
+	 * @param source
+	 *            The source to read the dump from, opened again on each reload.
+	 * @throws BeaconFormatException
+	 *             If the dump violates the BEACON specification.
+	 * @throws IOException
+	 *             If an I/O error occurs.
+	 * @throws NullPointerException
+	 *             If {@code name} or {@code source} is null.
+	 */
+	public void register(final String name, final Source source) throws IOException {
+		Objects.requireNonNull(name, "name is null");
+		Objects.requireNonNull(source, "source is null");
+		final Dump dump = new Dump(name, source);
+		dump.load();
+		final Dump previous = dumps.put(name, dump);
+		if (previous != null) {
+			previous.cancel();
+		}
+		dump.schedule();
+	}
+
+	/**
+	 * Rebuilds the snapshot of the specified dump in the background, and swaps it in once complete.
+	 *
+	 * @param name
+	 *            The name of a registered dump.
+	 * @return A future that completes when the new snapshot is swapped in, or fails with the reload error.
+	 * @throws IllegalArgumentException
+	 *             If no dump is registered with the specified name.
+	 */
+	public Future<?> reload(final String name) {
+		final Dump dump = getDump(name);
+		return executor.submit(() -> {
+			dump.load();
+			return null;
+		});
+	}
+
+	/**
+	 * Unregisters a dump.
+	 *
+	 * @param name
+	 *            The dump name.
+	 * @return {@code true} if a dump was registered with the specified name.
+	 */
+	public boolean unregister(final String name) {
+		final Dump dump = dumps.remove(name);
+		if (dump != null) {
+			dump.cancel();
+		}
+		return dump != null;
+	}
+
+	private Dump getDump(final String name) {
+		Objects.requireNonNull(name, "name is null");
+		final Dump dump = dumps.get(name);
+		if (dump == null) {
+			throw new IllegalArgumentException("No dump registered as " + name);
+		}
+		return dump;
+	}
+
+	private static Duration getUpdateInterval(final BeaconMetaFields metaFields) {
+		if (metaFields.isDefault(BeaconMetaField.UPDATE)) {
+			return null;
+		}
+		final LocalDateTime now = LocalDateTime.now();
+		try {
+			final Duration interval = Duration.between(now,
+					now.plus(BeaconUpdate.of(metaFields.getValue(BeaconMetaField.UPDATE)).getTemporalAmount()));
+			return interval.isZero() || interval.isNegative() ? null : interval;
+		} catch (final DateTimeException | ArithmeticException e) {
+			// BeaconUpdate.NEVER
+			return null;
+		}
+	}
+
+	/**
+	 * Latency histogram with four buckets per power of two nanoseconds, so that percentiles are reported with a
+	 * relative error of at most 25%. Recording is lock-free.
+	 */
+	public static final class LatencyHistogram {
+
+		private static final int SUB_BUCKET_BITS = 2;
+
+		private final AtomicLongArray counts = new AtomicLongArray((Long.SIZE + 1) << SUB_BUCKET_BITS);
+
+		public long getCount() {
+			long count = 0L;
+			for (int i = 0; i < counts.length(); i++) {
+				count += counts.get(i);
+			}
+			return count;
+		}
+
+		/**
+		 * Returns an upper bound of the specified percentile of recorded latencies, in nanoseconds.
+		 *
+		 * @param percentile
+		 *            A percentile, between 0 and 100.
+		 * @return An upper bound of the specified percentile of recorded latencies, or 0 if no latency was recorded.
+		 * @throws IllegalArgumentException
+		 *             If {@code percentile} is not between 0 and 100.
+		 */
+		public long getPercentile(final double percentile) {
+			if (!(percentile >= 0.0 && percentile <= 100.0)) {
+				throw new IllegalArgumentException("percentile must be between 0 and 100");
+			}
+			final long[] snapshot = new long[counts.length()];
+			long count = 0L;
+			for (int i = 0; i < snapshot.length; i++) {
+				count += snapshot[i] = counts.get(i);
+			}
+			final long rank = (long) Math.ceil(count * percentile / 100.0);
+			long seen = 0L;
+			for (int i = 0; i < snapshot.length; i++) {
+				seen += snapshot[i];
+				if (seen >= rank && seen > 0) {
+					return upperBound(i);
+				}
+			}
+			return 0L;
+		}
+
+		public void reset() {
+			for (int i = 0; i < counts.length(); i++) {
+				counts.set(i, 0L);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return String.format("{count=%d, p50=%dns, p99=%dns, p999=%dns}", getCount(), getPercentile(50.0),
+					getPercentile(99.0), getPercentile(99.9));
+		}
+
+		void record(final long nanos) {
+			counts.incrementAndGet(bucket(Math.max(0L, nanos)));
+		}
+
+		private static int bucket(final long value) {
+			final int magnitude = Long.SIZE - Long.numberOfLeadingZeros(value);
+			if (magnitude <= SUB_BUCKET_BITS) {
+				return (int) value;
+			}
+			final int subBucket = (int) (value >>> (magnitude - 1 - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+			return (magnitude << SUB_BUCKET_BITS) + subBucket;
+		}
+
+		private static long upperBound(final int bucket) {
+			final int magnitude = bucket >>> SUB_BUCKET_BITS;
+			if (magnitude <= SUB_BUCKET_BITS) {
+				return bucket;
+			}
+			final long subBucket = bucket & ((1 << SUB_BUCKET_BITS) - 1);
+			final int shift = magnitude - 1 - SUB_BUCKET_BITS;
+			return (((1L << SUB_BUCKET_BITS) | subBucket) + 1 << shift) - 1;
+		}
+
+	}
+
+	/**
+	 * Failure to reload a dump, with the time at which it occurred.
+	 */
+	public static final class ReloadFailure {
+
+		private final Exception exception;
+
+		private final Instant time;
+
+		ReloadFailure(final Exception exception, final Instant time) {
+			this.exception = exception;
+			this.time = time;
+		}
+
+		public Exception getException() {
+			return exception;
+		}
+
+		public Instant getTime() {
+			return time;
+		}
+
+		@Override
+		public String toString() {
+			return time + ": " + exception;
+		}
+
+	}
+
+	/**
+	 * Source of a BEACON dump, opened on each (re)load.
+	 */
+	@FunctionalInterface
+	public interface Source {
+
+		Reader open() throws IOException;
+
+	}
+
+	private final class Dump {
+
+		private volatile ReloadFailure lastFailure;
+
+		private final String name;
+
+		private ScheduledFuture<?> reload;
+
+		private volatile Snapshot snapshot;
+
+		private final Source source;
+
+		Dump(final String name, final Source source) {
+			this.name = name;
+			this.source = source;
+		}
+
+		synchronized void cancel() {
+			if (reload != null) {
+				reload.cancel(false);
+				reload = null;
+			}
+		}
+
+		void load() throws IOException {
+			try {
+				snapshot = read();
+			} catch (final IOException | RuntimeException e) {
+				lastFailure = new ReloadFailure(e, Instant.now());
+				throw e;
+			}
+		}
+
+		private Snapshot read() throws IOException {
+			final Map<String, List<BeaconLink>> lists = new HashMap<>();
+			final BeaconMetaFields metaFields;
+			try (BeaconParser parser = new BeaconParser(source.open())) {
+				metaFields = parser.getMetaFields();
+				final BeaconLink[] batch = new BeaconLink[BATCH_SIZE];
+				int n;
+				while ((n = parser.nextBatch(batch)) > 0) {
+					for (int i = 0; i < n; i++) {
+						lists.computeIfAbsent(batch[i].getSourceToken(), key -> new ArrayList<>(1)).add(batch[i]);
+					}
+				}
+			}
+			final Map<String, BeaconLink[]> links = new HashMap<>((int) (lists.size() / 0.75f) + 1);
+			for (final Map.Entry<String, List<BeaconLink>> entry : lists.entrySet()) {
+				links.put(entry.getKey(), entry.getValue().toArray(new BeaconLink[0]));
+			}
+			return new Snapshot(metaFields, links, Instant.now());
+		}
+
+		synchronized void schedule() {
+			final Duration interval = getUpdateInterval(snapshot.metaFields);
+			if (interval == null || executor.isShutdown() || dumps.get(name) != this) {
+				return;
+			}
+			reload = executor.schedule(() -> {
+				try {
+					load();
+				} catch (final IOException | RuntimeException e) {
+					// Recorded as the last reload failure, and the previous snapshot is kept
+				}
+				schedule();
+			}, interval.toMillis(), TimeUnit.MILLISECONDS);
+		}
+
+	}
+
+	private static final class Snapshot {
+
+		final Map<String, BeaconLink[]> links;
+
+		final Instant loadTime;
+
+		final BeaconMetaFields metaFields;
+
+		Snapshot(final BeaconMetaFields metaFields, final Map<String, BeaconLink[]> links, final Instant loadTime) {
+			this.metaFields = metaFields;
+			this.links = links;
+			this.loadTime = loadTime;
+		}
+
+	}
+
+}
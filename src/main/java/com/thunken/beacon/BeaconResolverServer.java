@@ -0,0 +1,199 @@
+package com.thunken.beacon;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Minimal local HTTP front end for a {@link BeaconResolver}, based on the HTTP server included in the JDK.
+ * <p>
+ * {@code GET /links?source=<token>} returns the links with the specified source token in all dumps, and
+ * {@code GET /links?source=<token>&dump=<name>} in the specified dump only. Links are written as newline-delimited
+ * JSON (see {@link BeaconExporter.Format#NDJSON}). The response status is 404 if there is no such link or dump, and
+ * 400 if the request is invalid. Requests are handled by a fixed pool of threads, so that a slow client does not
+ * hold up other lookups. {@code GET /latency} returns the resolver's {@link BeaconResolver.LatencyHistogram}, and
+ * {@code GET /status} returns one line per dump with the load time of its current snapshot and its last reload
+ * failure, if any.
+ * <p>
+ * Note: the current Javadoc for this project is incomplete. We rely on
+ * <a href="https://projectlombok.org/" target="_top">Lombok</a> to generate boilerplate code, and Lombok does not plug
+ * into Javadoc. Generated methods and constructors are not included, and the Javadoc for other methods and constructors
+ * may be incomplete. See <a href="https://projectlombok.org/features/delombok" target="_top">delombok</a> and
+ * <a href="https://github.com/thunken/beacon/issues/1" target="_top">beacon#1</a> for more information.
+ *
+ * @see BeaconResolver
+ */
+public class BeaconResolverServer implements Closeable {
+
+	public static final int DEFAULT_THREADS = 4;
+
+	private final ExecutorService executor;
+
+	private final BeaconResolver resolver;
+
+	private final HttpServer server;
+
+	/**
+	 * Creates and starts an HTTP server for the specified resolver, with {@value #DEFAULT_THREADS} request threads.
+	 *
+	 * @param resolver
+	 *            The resolver to serve lookups from.
+	 * @param address
+	 *            The address to bind the server to.
+	 * @throws IOException
+	 *             If the server cannot be bound to the specified address.
+	 * @throws NullPointerException
+	 *             If {@code resolver} or {@code address} is null.
+	 */
+	public BeaconResolverServer(final BeaconResolver resolver, final InetSocketAddress address) throws IOException {
+		this(resolver, address, DEFAULT_THREADS);
+	}
+
+	/**
+	 * Creates and starts an HTTP server for the specified resolver.
+	 *
+	 * @param resolver
+	 *            The resolver to serve lookups from.
+	 * @param address
+	 *            The address to bind the server to.
+	 * @param threads
+	 *            The number of threads handling requests.
+	 * @throws IllegalArgumentException
+	 *             If {@code threads} is not positive.
+	 * @throws IOException
+	 *             If the server cannot be bound to the specified address.
+	 * @throws NullPointerException
+	 *             If {@code resolver} or {@code address} is null.
+	 */
+	public BeaconResolverServer(final BeaconResolver resolver, final InetSocketAddress address, final int threads)
+			throws IOException {
+		this.resolver = Objects.requireNonNull(resolver, "resolver is null");
+		Objects.requireNonNull(address, "address is null");
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be positive");
+		}
+		server = HttpServer.create(address, 0);
+		executor = Executors.newFixedThreadPool(threads, runnable -> {
+			final Thread thread = new Thread(runnable, "beacon-resolver-server");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(executor);
+		server.createContext("/links", this::handleLinks);
+		server.createContext("/latency", this::handleLatency);
+		server.createContext("/status", this::handleStatus);
+		server.start();
+	}
+
+	/**
+	 * Stops the HTTP server and its request threads. The resolver is not closed.
+	 */
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	private void handleLatency(final HttpExchange exchange) throws IOException {
+		respond(exchange, 200, "text/plain", resolver.getLatencyHistogram() + "\n");
+	}
+
+	private void handleStatus(final HttpExchange exchange) throws IOException {
+		final StringBuilder builder = new StringBuilder();
+		for (final String name : new TreeSet<>(resolver.getDumpNames())) {
+			try {
+				builder.append(name).append("\tloaded=").append(resolver.getLoadTime(name));
+				resolver.getLastReloadFailure(name).ifPresent(failure -> builder.append("\tlastReloadFailure=")
+						.append(failure.getTime()).append("\t").append(failure.getException()));
+				builder.append('\n');
+			} catch (final IllegalArgumentException e) {
+				// Unregistered meanwhile
+			}
+		}
+		respond(exchange, 200, "text/plain", builder.toString());
+	}
+
+	private void handleLinks(final HttpExchange exchange) throws IOException {
+		if (!"GET".equals(exchange.getRequestMethod())) {
+			respond(exchange, 405, "text/plain", "Method not allowed\n");
+			return;
+		}
+		final Map<String, List<BeaconLink>> links;
+		try {
+			// URLDecoder throws IllegalArgumentException on malformed escapes
+			final Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+			final String source = parameters.get("source");
+			final String dump = parameters.get("dump");
+			if (source == null) {
+				respond(exchange, 400, "text/plain", "Missing source token\n");
+				return;
+			}
+			if (dump == null) {
+				links = resolver.lookup(source);
+			} else {
+				try {
+					links = Collections.singletonMap(dump, resolver.lookup(dump, source));
+				} catch (final IllegalArgumentException e) {
+					// No dump registered with this name
+					respond(exchange, 404, "text/plain", e.getMessage() + "\n");
+					return;
+				}
+			}
+		} catch (final IllegalArgumentException e) {
+			respond(exchange, 400, "text/plain", e.getMessage() + "\n");
+			return;
+		}
+		final BeaconExporter exporter = new BeaconExporter(BeaconExporter.Format.NDJSON);
+		final StringBuilder builder = new StringBuilder();
+		for (final List<BeaconLink> list : links.values()) {
+			for (final BeaconLink link : list) {
+				exporter.append(builder, link);
+			}
+		}
+		respond(exchange, builder.length() == 0 ? 404 : 200, "application/x-ndjson", builder.toString());
+	}
+
+	private static Map<String, String> parseQuery(final String query) throws UnsupportedEncodingException {
+		final Map<String, String> parameters = new HashMap<>();
+		if (query != null) {
+			for (final String parameter : query.split("&")) {
+				final int index = parameter.indexOf('=');
+				if (index > 0) {
+					parameters.put(URLDecoder.decode(parameter.substring(0, index), "UTF-8"),
+							URLDecoder.decode(parameter.substring(index + 1), "UTF-8"));
+				}
+			}
+		}
+		return parameters;
+	}
+
+	private static void respond(final HttpExchange exchange, final int status, final String contentType,
+			final String body) throws IOException {
+		final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+}
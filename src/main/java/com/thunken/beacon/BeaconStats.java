@@ -0,0 +1,231 @@
+package com.thunken.beacon;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Single-pass statistics over BEACON links, in constant memory.
+ * <p>
+ * Distinct source, target and annotation tokens are counted with {@link HyperLogLog} sketches (standard error of
+ * about 0.8%). The most frequent annotation and target tokens are tracked with count-min sketches and a bounded set
+ * of heavy-hitter candidates, so their frequencies may be slightly overestimated. Token lengths are counted in
+ * fixed-width histograms, with one bucket per length up to {@value #MAX_LENGTH} characters and a last bucket for
+ * longer tokens. An instance takes about 1 MiB, whatever the number of links.
+ * <p>
+ * Instances are not thread-safe. To profile a dump in parallel, give each worker its own instance and combine them
+ * with {@link #merge(BeaconStats)}.
+ * <p>
+ * Note: the current Javadoc for this project is incomplete. We rely on
+ * <a href="https://projectlombok.org/" target="_top">Lombok</a> to generate boilerplate code, and Lombok does not plug
+ * into Javadoc. Generated methods and constructors are not included, and the Javadoc for other methods and constructors
+ * may be incomplete. See <a href="https://projectlombok.org/features/delombok" target="_top">delombok</a> and
+ * <a href="https://github.com/thunken/beacon/issues/1" target="_top">beacon#1</a> for more information.
+ *
+ * @see BeaconParser
+ */
+public final class BeaconStats implements Consumer<BeaconLink> {
+
+	public static final int MAX_LENGTH = 255;
+
+	private static final int BATCH_SIZE = 1024;
+
+	private static final int CANDIDATES = 64;
+
+	private final HyperLogLog annotations = new HyperLogLog();
+
+	private final long[] annotationLengths = new long[MAX_LENGTH + 2];
+
+	private long linkCount;
+
+	private long selfLinkCount;
+
+	private final long[] sourceLengths = new long[MAX_LENGTH + 2];
+
+	private final HyperLogLog sources = new HyperLogLog();
+
+	private final long[] targetLengths = new long[MAX_LENGTH + 2];
+
+	private final HyperLogLog targets = new HyperLogLog();
+
+	private final FrequencySketch topAnnotations = new FrequencySketch(CANDIDATES);
+
+	private final FrequencySketch topTargets = new FrequencySketch(CANDIDATES);
+
+	@Override
+	public void accept(final BeaconLink link) {
+		Objects.requireNonNull(link, "link is null");
+		final String source = link.getSourceToken();
+		final String annotation = link.getAnnotationToken() == null ? "" : link.getAnnotationToken();
+		final String target = link.getTargetToken();
+		linkCount++;
+		sources.add(source);
+		targets.add(target);
+		topTargets.add(target);
+		if (!annotation.isEmpty()) {
+			annotations.add(annotation);
+			topAnnotations.add(annotation);
+		}
+		if (source.equals(target)) {
+			selfLinkCount++;
+		}
+		sourceLengths[Math.min(source.length(), MAX_LENGTH + 1)]++;
+		annotationLengths[Math.min(annotation.length(), MAX_LENGTH + 1)]++;
+		targetLengths[Math.min(target.length(), MAX_LENGTH + 1)]++;
+	}
+
+	/**
+	 * Adds all remaining links from the specified parser to these statistics.
+	 *
+	 * @param parser
+	 *            The parser to pull links from.
+	 * @throws NullPointerException
+	 *             If {@code parser} is null.
+	 */
+	public void acceptAll(final BeaconParser parser) {
+		Objects.requireNonNull(parser, "parser is null");
+		final BeaconLink[] batch = new BeaconLink[BATCH_SIZE];
+		int n;
+		while ((n = parser.nextBatch(batch)) > 0) {
+			for (int i = 0; i < n; i++) {
+				accept(batch[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the histogram of annotation token lengths. Links without annotation token count as length 0.
+	 *
+	 * @return The number of annotation tokens for each length up to {@link #MAX_LENGTH}, followed by the number of
+	 *         longer annotation tokens.
+	 */
+	public long[] getAnnotationLengthHistogram() {
+		return annotationLengths.clone();
+	}
+
+	/**
+	 * Returns the estimated number of distinct non-empty annotation tokens.
+	 *
+	 * @return The estimated number of distinct non-empty annotation tokens.
+	 */
+	public long getDistinctAnnotations() {
+		return annotations.estimate();
+	}
+
+	/**
+	 * Returns the estimated number of distinct source tokens.
+	 *
+	 * @return The estimated number of distinct source tokens.
+	 */
+	public long getDistinctSources() {
+		return sources.estimate();
+	}
+
+	/**
+	 * Returns the estimated number of distinct target tokens.
+	 *
+	 * @return The estimated number of distinct target tokens.
+	 */
+	public long getDistinctTargets() {
+		return targets.estimate();
+	}
+
+	public long getLinkCount() {
+		return linkCount;
+	}
+
+	/**
+	 * Returns the share of links whose target token equals their source token, e.g. links from single-token lines.
+	 *
+	 * @return The share of links whose target token equals their source token, or 0 if there is no link.
+	 */
+	public double getSelfLinkShare() {
+		return linkCount == 0L ? 0.0 : (double) selfLinkCount / linkCount;
+	}
+
+	/**
+	 * Returns the histogram of source token lengths.
+	 *
+	 * @return The number of source tokens for each length up to {@link #MAX_LENGTH}, followed by the number of longer
+	 *         source tokens.
+	 */
+	public long[] getSourceLengthHistogram() {
+		return sourceLengths.clone();
+	}
+
+	/**
+	 * Returns the histogram of target token lengths.
+	 *
+	 * @return The number of target tokens for each length up to {@link #MAX_LENGTH}, followed by the number of longer
+	 *         target tokens.
+	 */
+	public long[] getTargetLengthHistogram() {
+		return targetLengths.clone();
+	}
+
+	/**
+	 * Returns the most frequent non-empty annotation tokens with their estimated frequencies, most frequent first.
+	 *
+	 * @param limit
+	 *            The maximum number of annotation tokens to return, at most 64.
+	 * @return The most frequent non-empty annotation tokens with their estimated frequencies.
+	 */
+	public Map<String, Long> getTopAnnotations(final int limit) {
+		return topAnnotations.top(limit);
+	}
+
+	/**
+	 * Returns the most frequent target tokens with their estimated frequencies, most frequent first.
+	 *
+	 * @param limit
+	 *            The maximum number of target tokens to return, at most 64.
+	 * @return The most frequent target tokens with their estimated frequencies.
+	 */
+	public Map<String, Long> getTopTargets(final int limit) {
+		return topTargets.top(limit);
+	}
+
+	/**
+	 * Adds the statistics from another instance to these statistics, e.g. to combine the partial results of parallel
+	 * workers. The other instance is left unchanged.
+	 *
+	 * @param other
+	 *            The statistics to add.
+	 * @throws NullPointerException
+	 *             If {@code other} is null.
+	 */
+	public void merge(final BeaconStats other) {
+		Objects.requireNonNull(other, "other is null");
+		linkCount += other.linkCount;
+		selfLinkCount += other.selfLinkCount;
+		sources.merge(other.sources);
+		targets.merge(other.targets);
+		annotations.merge(other.annotations);
+		topTargets.merge(other.topTargets);
+		topAnnotations.merge(other.topAnnotations);
+		for (int i = 0; i < sourceLengths.length; i++) {
+			sourceLengths[i] += other.sourceLengths[i];
+			annotationLengths[i] += other.annotationLengths[i];
+			targetLengths[i] += other.targetLengths[i];
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "{linkCount=" + linkCount + ", distinctSources=" + getDistinctSources() + ", distinctTargets="
+				+ getDistinctTargets() + ", distinctAnnotations=" + getDistinctAnnotations() + ", selfLinkShare="
+				+ getSelfLinkShare() + ", topAnnotations=" + getTopAnnotations(10) + ", topTargets="
+				+ getTopTargets(10) + ", maxSourceLength=" + maxLength(sourceLengths) + ", maxTargetLength="
+				+ maxLength(targetLengths) + "}";
+	}
+
+	private static String maxLength(final long[] histogram) {
+		for (int i = histogram.length - 1; i >= 0; i--) {
+			if (histogram[i] > 0) {
+				return i > MAX_LENGTH ? ">" + MAX_LENGTH : Integer.toString(i);
+			}
+		}
+		return "0";
+	}
+
+}
@@ -0,0 +1,242 @@
+package com.thunken.beacon;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Filter on one token of BEACON links, which a {@link BeaconParser} evaluates before constructing links.
+ * <p>
+ * Filters are first evaluated on the raw link line: when the relevant token only contains printable ASCII characters
+ * other than space, normalization leaves it unchanged, and the filter is tested directly against the corresponding
+ * region of the line. Otherwise (non-ASCII characters, whitespace, or a two-token line whose second token may or may
+ * not be a target), the line is parsed and the filter is tested against the normalized token of the resulting link.
+ * Either way, the outcome is the same as testing the filter against {@link BeaconLink} instances, but lines rejected
+ * on their raw content are never tokenized.
+ * <p>
+ * Note: the current Javadoc for this project is incomplete. We rely on
+ * <a href="https://projectlombok.org/" target="_top">Lombok</a> to generate boilerplate code, and Lombok does not plug
+ * into Javadoc. Generated methods and constructors are not included, and the Javadoc for other methods and constructors
+ * may be incomplete. See <a href="https://projectlombok.org/features/delombok" target="_top">delombok</a> and
+ * <a href="https://github.com/thunken/beacon/issues/1" target="_top">beacon#1</a> for more information.
+ *
+ * @see BeaconParser#addFilter(BeaconTokenFilter)
+ * @see <a href="https://gbv.github.io/beaconspec/beacon.html#links" target=
+ *      "_top">https://gbv.github.io/beaconspec/beacon.html#links</a>
+ */
+public final class BeaconTokenFilter {
+
+	private final RegionPredicate predicate;
+
+	private final Token token;
+
+	private BeaconTokenFilter(final Token token, final RegionPredicate predicate) {
+		this.token = Objects.requireNonNull(token, "token is null");
+		this.predicate = predicate;
+	}
+
+	public Token getToken() {
+		return token;
+	}
+
+	/**
+	 * Returns {@code true} if the specified link is accepted by this filter.
+	 *
+	 * @param link
+	 *            A link.
+	 * @return {@code true} if the specified link is accepted by this filter.
+	 * @throws NullPointerException
+	 *             If {@code link} is null.
+	 */
+	public boolean test(final BeaconLink link) {
+		Objects.requireNonNull(link, "link is null");
+		final String value = token.get(link);
+		return predicate.test(value, 0, value.length());
+	}
+
+	Match test(final String linkLine, final BeaconMetaFields metaFields) {
+		final int length = linkLine.length();
+		final int first = linkLine.indexOf('|');
+		final int second = first < 0 ? -1 : linkLine.indexOf('|', first + 1);
+		if (second >= 0 && linkLine.indexOf('|', second + 1) >= 0) {
+			// Too many tokens
+			return Match.REJECT;
+		}
+		Token secondToken = null;
+		if (token != Token.SOURCE && first >= 0 && second < 0) {
+			secondToken = secondTokenType(linkLine, first + 1, metaFields);
+			if (secondToken == null) {
+				return Match.UNKNOWN;
+			}
+		}
+		int start = 0, end = first < 0 ? length : first;
+		switch (token) {
+		case SOURCE:
+			break;
+		case ANNOTATION:
+			if (first < 0) {
+				return test("", 0, 0);
+			}
+			if (second >= 0) {
+				start = first + 1;
+				end = second;
+				break;
+			}
+			if (secondToken == Token.TARGET) {
+				return test("", 0, 0);
+			}
+			start = first + 1;
+			end = length;
+			break;
+		case TARGET:
+			if (first < 0) {
+				break;
+			}
+			if (second >= 0) {
+				start = second + 1;
+				end = length;
+				break;
+			}
+			if (secondToken == Token.TARGET) {
+				start = first + 1;
+				end = length;
+			}
+			break;
+		}
+		if (!isNormalized(linkLine, start, end)) {
+			return Match.UNKNOWN;
+		}
+		if (start == end && token != Token.ANNOTATION) {
+			// Empty source or target token
+			return Match.REJECT;
+		}
+		return test(linkLine, start, end);
+	}
+
+	private Match test(final String string, final int start, final int end) {
+		return predicate.test(string, start, end) ? Match.ACCEPT : Match.REJECT;
+	}
+
+	/**
+	 * Returns a filter that accepts links whose specified token is contained in the specified values.
+	 *
+	 * @param token
+	 *            The token to test.
+	 * @param values
+	 *            The accepted values. The collection is copied into a hash set.
+	 * @return A filter that accepts links whose specified token is contained in the specified values.
+	 * @throws NullPointerException
+	 *             If {@code token} or {@code values} is null.
+	 */
+	public static BeaconTokenFilter in(final Token token, final Collection<String> values) {
+		Objects.requireNonNull(values, "values is null");
+		final Set<String> set = new HashSet<>(values);
+		return new BeaconTokenFilter(token, (string, start, end) -> set
+				.contains(start == 0 && end == string.length() ? string : string.substring(start, end)));
+	}
+
+	/**
+	 * Returns a filter that accepts links whose specified token contains a match for the specified pattern.
+	 *
+	 * @param token
+	 *            The token to test.
+	 * @param pattern
+	 *            The pattern to find in the token. Anchors match at the beginning and the end of the token.
+	 * @return A filter that accepts links whose specified token contains a match for the specified pattern.
+	 * @throws NullPointerException
+	 *             If {@code token} or {@code pattern} is null.
+	 */
+	public static BeaconTokenFilter matches(final Token token, final Pattern pattern) {
+		Objects.requireNonNull(pattern, "pattern is null");
+		return new BeaconTokenFilter(token, (string, start, end) -> pattern.matcher(string).region(start, end).find());
+	}
+
+	/**
+	 * Returns a filter that accepts links whose specified token starts with the specified prefix.
+	 *
+	 * @param token
+	 *            The token to test.
+	 * @param prefix
+	 *            The prefix.
+	 * @return A filter that accepts links whose specified token starts with the specified prefix.
+	 * @throws NullPointerException
+	 *             If {@code token} or {@code prefix} is null.
+	 */
+	public static BeaconTokenFilter prefix(final Token token, final String prefix) {
+		Objects.requireNonNull(prefix, "prefix is null");
+		return new BeaconTokenFilter(token,
+				(string, start, end) -> end - start >= prefix.length() && string.startsWith(prefix, start));
+	}
+
+	private static boolean isNormalized(final String string, final int start, final int end) {
+		for (int i = start; i < end; i++) {
+			final char c = string.charAt(i);
+			if (c <= ' ' || c > '~') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Token secondTokenType(final String linkLine, final int start, final BeaconMetaFields metaFields) {
+		// Same rule as BeaconParser#parseLine for two-token lines
+		if (!metaFields.isDefault(BeaconMetaField.TARGET)) {
+			return Token.ANNOTATION;
+		}
+		if (!isNormalized(linkLine, start, linkLine.length())) {
+			return null;
+		}
+		final boolean httpx = linkLine.regionMatches(true, start, "http:", 0, 5)
+				|| linkLine.regionMatches(true, start, "https:", 0, 6);
+		return httpx ? Token.TARGET : Token.ANNOTATION;
+	}
+
+	/**
+	 * Outcome of a filter evaluated on a raw link line.
+	 */
+	enum Match {
+
+		ACCEPT,
+		REJECT,
+		UNKNOWN;
+
+	}
+
+	@FunctionalInterface
+	private interface RegionPredicate {
+
+		boolean test(String string, int start, int end);
+
+	}
+
+	/**
+	 * Enumerated type for link tokens.
+	 */
+	public enum Token {
+
+		ANNOTATION {
+			@Override
+			String get(final BeaconLink link) {
+				return link.getAnnotationToken() == null ? "" : link.getAnnotationToken();
+			}
+		},
+		SOURCE {
+			@Override
+			String get(final BeaconLink link) {
+				return link.getSourceToken();
+			}
+		},
+		TARGET {
+			@Override
+			String get(final BeaconLink link) {
+				return link.getTargetToken();
+			}
+		};
+
+		abstract String get(BeaconLink link);
+
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.thunken.beacon;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Count-min sketch with a bounded set of heavy-hitter candidates. Frequencies are never underestimated, and are
+ * overestimated by at most {@code e / width} times the total count with probability {@code 1 - e^-depth}. The
+ * candidates are the most frequent values seen so far according to the sketch.
+ *
+ * @see <a href="http://dimacs.rutgers.edu/~graham/pubs/papers/cm-full.pdf" target="_top">An improved data stream
+ *      summary: the count-min sketch and its applications</a>
+ */
+final class FrequencySketch {
+
+	private static final int DEPTH = 4;
+
+	private static final int WIDTH = 1 << 14;
+
+	private final int capacity;
+
+	private final Map<String, Long> candidates = new HashMap<>();
+
+	private final long[][] counts = new long[DEPTH][WIDTH];
+
+	private long minCandidate;
+
+	FrequencySketch(final int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.capacity = capacity;
+	}
+
+	void add(final String value) {
+		final long hash = HyperLogLog.hash(value);
+		final int h1 = (int) hash, h2 = (int) (hash >>> 32);
+		long estimate = Long.MAX_VALUE;
+		for (int i = 0; i < DEPTH; i++) {
+			final int index = (h1 + i * h2) & (WIDTH - 1);
+			estimate = Math.min(estimate, ++counts[i][index]);
+		}
+		offer(value, estimate);
+	}
+
+	long estimate(final String value) {
+		final long hash = HyperLogLog.hash(value);
+		final int h1 = (int) hash, h2 = (int) (hash >>> 32);
+		long estimate = Long.MAX_VALUE;
+		for (int i = 0; i < DEPTH; i++) {
+			estimate = Math.min(estimate, counts[i][(h1 + i * h2) & (WIDTH - 1)]);
+		}
+		return estimate;
+	}
+
+	void merge(final FrequencySketch other) {
+		Objects.requireNonNull(other, "other is null");
+		for (int i = 0; i < DEPTH; i++) {
+			for (int j = 0; j < WIDTH; j++) {
+				counts[i][j] += other.counts[i][j];
+			}
+		}
+		final List<String> values = new ArrayList<>(candidates.keySet());
+		values.addAll(other.candidates.keySet());
+		candidates.clear();
+		minCandidate = 0L;
+		for (final String value : values) {
+			offer(value, estimate(value));
+		}
+	}
+
+	/**
+	 * Returns up to {@code limit} heavy hitters with their estimated frequencies, most frequent first.
+	 */
+	Map<String, Long> top(final int limit) {
+		final List<Map.Entry<String, Long>> entries = new ArrayList<>(candidates.entrySet());
+		entries.sort(Collections.reverseOrder(Map.Entry.comparingByValue()));
+		final Map<String, Long> top = new LinkedHashMap<>();
+		for (final Map.Entry<String, Long> entry : entries.subList(0, Math.min(limit, entries.size()))) {
+			top.put(entry.getKey(), entry.getValue());
+		}
+		return top;
+	}
+
+	private void offer(final String value, final long estimate) {
+		if (candidates.containsKey(value)) {
+			candidates.put(value, estimate);
+			return;
+		}
+		if (candidates.size() < capacity) {
+			candidates.put(value, estimate);
+			minCandidate = candidates.size() == 1 ? estimate : Math.min(minCandidate, estimate);
+			return;
+		}
+		if (estimate <= minCandidate) {
+			return;
+		}
+		// Candidate estimates only grow, so minCandidate may be stale: look for the actual minimum
+		Map.Entry<String, Long> min = null;
+		for (final Map.Entry<String, Long> entry : candidates.entrySet()) {
+			if (min == null || entry.getValue() < min.getValue()) {
+				min = entry;
+			}
+		}
+		minCandidate = min.getValue();
+		if (estimate > minCandidate) {
+			candidates.remove(min.getKey());
+			candidates.put(value, estimate);
+			minCandidate = Collections.min(candidates.values());
+		}
+	}
+
+}
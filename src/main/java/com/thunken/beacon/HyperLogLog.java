@@ -0,0 +1,96 @@
+package com.thunken.beacon;
+
+import java.util.Objects;
+
+/**
+ * HyperLogLog cardinality sketch over 64-bit hashes, with {@code 2^precision} one-byte registers. The standard error
+ * of estimates is about {@code 1.04 / sqrt(2^precision)}, e.g. 0.8% with the default precision of 14 (16 KiB).
+ *
+ * @see <a href="http://algo.inria.fr/flajolet/Publications/FlFuGaMe07.pdf" target="_top">HyperLogLog: the analysis of
+ *      a near-optimal cardinality estimation algorithm</a>
+ */
+final class HyperLogLog {
+
+	static final int DEFAULT_PRECISION = 14;
+
+	private final int precision;
+
+	private final byte[] registers;
+
+	HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	HyperLogLog(final int precision) {
+		if (precision < 4 || precision > 18) {
+			throw new IllegalArgumentException("precision must be between 4 and 18");
+		}
+		this.precision = precision;
+		registers = new byte[1 << precision];
+	}
+
+	void add(final long hash) {
+		final int index = (int) (hash >>> (Long.SIZE - precision));
+		// Guard bit so that the rank never exceeds 64 - precision + 1
+		final long remainder = hash << precision | 1L << (precision - 1);
+		final byte rank = (byte) (Long.numberOfLeadingZeros(remainder) + 1);
+		if (rank > registers[index]) {
+			registers[index] = rank;
+		}
+	}
+
+	void add(final String string) {
+		add(hash(string));
+	}
+
+	long estimate() {
+		final int m = registers.length;
+		double sum = 0.0;
+		int zeros = 0;
+		for (final byte register : registers) {
+			sum += 1.0 / (1L << register);
+			if (register == 0) {
+				zeros++;
+			}
+		}
+		final double alpha = 0.7213 / (1.0 + 1.079 / m);
+		final double estimate = alpha * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0) {
+			// Linear counting for small cardinalities
+			return Math.round(m * Math.log((double) m / zeros));
+		}
+		return Math.round(estimate);
+	}
+
+	void merge(final HyperLogLog other) {
+		Objects.requireNonNull(other, "other is null");
+		if (other.precision != precision) {
+			throw new IllegalArgumentException("Cannot merge sketches with different precisions");
+		}
+		for (int i = 0; i < registers.length; i++) {
+			if (other.registers[i] > registers[i]) {
+				registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	/**
+	 * Returns a 64-bit hash of the specified string: FNV-1a over its characters, followed by the MurmurHash3
+	 * finalizer so that all bits are well mixed.
+	 */
+	static long hash(final String string) {
+		long hash = 0xCBF29CE484222325L;
+		final int length = string.length();
+		for (int i = 0; i < length; i++) {
+			hash ^= string.charAt(i);
+			hash *= 0x100000001B3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+}
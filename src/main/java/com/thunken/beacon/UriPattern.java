@@ -0,0 +1,141 @@
+package com.thunken.beacon;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+/**
+ * Precompiled BEACON URI pattern. The pattern is split once into literal parts and {@code {ID}} or {@code {+ID}}
+ * expressions, so that expanding a token only appends the literal parts and the encoded token to a buffer.
+ * <p>
+ * Expansion follows the encoding rules of {@link com.damnhandy.uri.template.UriTemplate} for simple and reserved
+ * expansion: unreserved characters are copied, reserved characters are copied in reserved expansion only (except
+ * {@code [} and {@code ]}), valid percent-encoded triplets are copied in reserved expansion only, and any other
+ * character is percent-encoded as UTF-8. Expanded tokens therefore only contain ASCII characters that never need
+ * escaping in N-Triples IRIs or JSON strings.
+ *
+ * @see <a href="https://gbv.github.io/beaconspec/beacon.html#uri-patterns" target=
+ *      "_top">https://gbv.github.io/beaconspec/beacon.html#uri-patterns</a>
+ * @see <a href="https://tools.ietf.org/html/rfc6570" target="_top">RFC 6570</a>
+ */
+final class UriPattern {
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private static final String RESERVED = ":/?#@!$&'()*+,;=";
+
+	private final String[] literals;
+
+	private final boolean[] reserved;
+
+	private UriPattern(final String[] literals, final boolean[] reserved) {
+		this.literals = literals;
+		this.reserved = reserved;
+	}
+
+	/**
+	 * Appends the expansion of this pattern for the specified token to the specified buffer.
+	 */
+	void expand(final StringBuilder builder, final String token) {
+		for (int i = 0; i < reserved.length; i++) {
+			builder.append(literals[i]);
+			encode(builder, token, reserved[i]);
+		}
+		builder.append(literals[reserved.length]);
+	}
+
+	String expand(final String token) {
+		final StringBuilder builder = new StringBuilder(token.length() + length());
+		expand(builder, token);
+		return builder.toString();
+	}
+
+	/**
+	 * Returns a copy of this pattern with each literal part rewritten by the specified function, e.g. to escape the
+	 * literal parts once for an output format.
+	 */
+	UriPattern withLiterals(final UnaryOperator<String> rewrite) {
+		final String[] rewritten = new String[literals.length];
+		for (int i = 0; i < literals.length; i++) {
+			rewritten[i] = rewrite.apply(literals[i]);
+		}
+		return new UriPattern(rewritten, reserved);
+	}
+
+	int length() {
+		int length = 0;
+		for (final String literal : literals) {
+			length += literal.length();
+		}
+		return length;
+	}
+
+	static UriPattern compile(final String template) {
+		Objects.requireNonNull(template, "template is null");
+		final List<String> literals = new ArrayList<>();
+		final List<Boolean> reserved = new ArrayList<>();
+		int start = 0;
+		int open;
+		while ((open = template.indexOf('{', start)) >= 0) {
+			final int close = template.indexOf('}', open);
+			if (close < 0) {
+				throw new BeaconFormatException("Unterminated expression in URI pattern: " + template);
+			}
+			final String expression = template.substring(open, close + 1);
+			if (BeaconParser.RESERVED_EXPANSION.equals(expression)) {
+				reserved.add(Boolean.TRUE);
+			} else if (BeaconParser.SIMPLE_EXPANSION.equals(expression)) {
+				reserved.add(Boolean.FALSE);
+			} else {
+				throw new BeaconFormatException("Invalid expression " + expression + " in URI pattern: " + template);
+			}
+			literals.add(template.substring(start, open));
+			start = close + 1;
+		}
+		literals.add(template.substring(start));
+		final boolean[] array = new boolean[reserved.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = reserved.get(i);
+		}
+		return new UriPattern(literals.toArray(new String[0]), array);
+	}
+
+	private static void encode(final StringBuilder builder, final String token, final boolean reserved) {
+		final int length = token.length();
+		for (int i = 0; i < length; i++) {
+			final char c = token.charAt(i);
+			if (isUnreserved(c) || reserved && RESERVED.indexOf(c) >= 0) {
+				builder.append(c);
+			} else if (reserved && c == '%' && i + 2 < length && isHex(token.charAt(i + 1))
+					&& isHex(token.charAt(i + 2))) {
+				builder.append(token, i, i + 3);
+				i += 2;
+			} else if (c < 0x80) {
+				appendByte(builder, c);
+			} else {
+				final int end = Character.isHighSurrogate(c) && i + 1 < length
+						&& Character.isLowSurrogate(token.charAt(i + 1)) ? i + 2 : i + 1;
+				for (final byte b : token.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+					appendByte(builder, b);
+				}
+				i = end - 1;
+			}
+		}
+	}
+
+	private static void appendByte(final StringBuilder builder, final int b) {
+		builder.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+	}
+
+	private static boolean isHex(final char c) {
+		return c >= '0' && c <= '9' || c >= 'A' && c <= 'F' || c >= 'a' && c <= 'f';
+	}
+
+	private static boolean isUnreserved(final char c) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '.'
+				|| c == '_' || c == '~';
+	}
+
+}
@@ -0,0 +1,130 @@
+package com.thunken.beacon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BeaconConcurrentParserTest {
+
+	private static final String HEADER = "#FORMAT: BEACON\r\n#PREFIX: http://example.org/\n\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testHeaderOnly() throws Exception {
+		assertSameAsBeaconParser("#FORMAT: BEACON\n#PREFIX: http://example.org/\n", 4, 16);
+		assertSameAsBeaconParser("#FORMAT: BEACON\n#PREFIX: http://example.org/\n\n\n", 4, 16);
+		assertSameAsBeaconParser("#FORMAT: BEACON", 4, 16);
+	}
+
+	@Test
+	public void testLines() throws Exception {
+		final StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			switch (i % 7) {
+			case 0:
+				body.append("s").append(i).append("|note|t").append(i).append("\r\n");
+				break;
+			case 1:
+				// Blank lines in the body are neither links nor the end of the dump
+				body.append("\n\r\n");
+				break;
+			case 2:
+				body.append("ü").append(i).append("|http://example.org/").append(i).append('\n');
+				break;
+			case 3:
+				body.append("a|b|c|").append(i).append('\n');
+				break;
+			case 4:
+				// Longer than the smallest blocks
+				for (int j = 0; j < 40; j++) {
+					body.append("long");
+				}
+				body.append(i).append('\n');
+				break;
+			default:
+				body.append("s").append(i).append('\n');
+				break;
+			}
+		}
+		for (final int blockSize : new int[] { 1, 7, 64, 1 << 20 }) {
+			for (final int threads : new int[] { 1, 2, 8 }) {
+				assertSameAsBeaconParser(HEADER + body, threads, blockSize);
+				// Last line without line feed
+				assertSameAsBeaconParser(HEADER + body + "last|note", threads, blockSize);
+			}
+		}
+	}
+
+	@Test
+	public void testSingleLineWithoutLineFeed() throws Exception {
+		assertSameAsBeaconParser(HEADER + "only", 2, 1);
+		assertSameAsBeaconParser("only", 2, 1);
+	}
+
+	private void assertSameAsBeaconParser(final String dump, final int threads, final int blockSize)
+			throws Exception {
+		final Path path = folder.newFile().toPath();
+		Files.write(path, dump.getBytes(StandardCharsets.UTF_8));
+		final Map<Long, String> expected = new TreeMap<>();
+		try (BeaconParser parser = new BeaconParser(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+			while (parser.hasNext()) {
+				final long lineNo = parser.getLineNo();
+				final long linkNo = parser.getLinkNo();
+				final Optional<BeaconLink> link = parser.next();
+				if (link.isPresent()) {
+					expected.put(lineNo, linkNo + " " + tokens(link.get()));
+				}
+			}
+		}
+		final Map<Long, String> actual = new ConcurrentSkipListMap<>();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try (BeaconConcurrentParser parser = new BeaconConcurrentParser(path, new BeaconMetaFields(), blockSize)) {
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(() -> {
+					Optional<BeaconConcurrentParser.Batch> batch;
+					while ((batch = parser.claimBatch()).isPresent()) {
+						final List<BeaconLink> links = batch.get().getLinks();
+						for (int j = 0; j < links.size(); j++) {
+							final String previous = actual.put(batch.get().getLineNo(j),
+									batch.get().getLinkNo(j) + " " + tokens(links.get(j)));
+							assertEquals("Line claimed twice", null, previous);
+						}
+					}
+					return null;
+				}));
+			}
+			for (final Future<?> future : futures) {
+				future.get();
+			}
+			assertFalse(parser.claimBatch().isPresent());
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals("threads=" + threads + ", blockSize=" + blockSize, expected, new TreeMap<>(actual));
+	}
+
+	private static String tokens(final BeaconLink link) {
+		return link.getSourceToken() + "|" + link.getAnnotationToken() + "|" + link.getTargetToken();
+	}
+
+}
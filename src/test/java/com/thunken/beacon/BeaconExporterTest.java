@@ -0,0 +1,44 @@
+package com.thunken.beacon;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class BeaconExporterTest {
+
+	@Test
+	public void testLiteralsEncodedOnce() throws IOException {
+		final String dump = "#FORMAT: BEACON\n#PREFIX: http://example.org/\"a b/{ID}\n"
+				+ "#TARGET: http://t.org/<x>/{+ID}\n\nü 1|note|x y\n";
+		assertEquals("{\"source\":\"http://example.org/%22a%20b/%C3%BC%201\","
+				+ "\"relation\":\"http://www.w3.org/2000/01/rdf-schema#seeAlso\","
+				+ "\"target\":\"http://t.org/%3Cx%3E/x%20y\",\"annotation\":\"note\"}\n",
+				export(BeaconExporter.Format.NDJSON, dump));
+		assertEquals("<http://example.org/%22a%20b/%C3%BC%201> <http://www.w3.org/2000/01/rdf-schema#seeAlso> "
+				+ "<http://t.org/%3Cx%3E/x%20y> .\n", export(BeaconExporter.Format.NTRIPLES, dump));
+	}
+
+	@Test
+	public void testRelativeIrisSkipped() throws IOException {
+		final BeaconExporter exporter = new BeaconExporter(BeaconExporter.Format.NTRIPLES);
+		final StringWriter writer = new StringWriter();
+		final String dump = "#FORMAT: BEACON\n#PREFIX: http://example.org/\n\n"
+				+ "k|note|t\nk|note|urn:x\nk|http://x.org/\n";
+		assertEquals(2, exporter.export(new BeaconParser(new StringReader(dump)), writer));
+		assertEquals(1, exporter.getSkippedLinks());
+		assertEquals("<http://example.org/k> <http://www.w3.org/2000/01/rdf-schema#seeAlso> <urn:x> .\n"
+				+ "<http://example.org/k> <http://www.w3.org/2000/01/rdf-schema#seeAlso> <http://x.org/> .\n",
+				writer.toString());
+	}
+
+	private static String export(final BeaconExporter.Format format, final String dump) throws IOException {
+		final StringWriter writer = new StringWriter();
+		new BeaconExporter(format).export(new BeaconParser(new StringReader(dump)), writer);
+		return writer.toString();
+	}
+
+}
@@ -0,0 +1,195 @@
+package com.thunken.beacon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BeaconLinkStoreTest {
+
+	private static final String HEADER = "#FORMAT: BEACON\n#PREFIX: http://example.org/\n#NAME: Test\n\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testApply() throws IOException {
+		try (BeaconLinkStore store = new BeaconLinkStore(folder.getRoot().toPath())) {
+			store.load(parser("a|x|1\na|y|2\nb||3\n"));
+			store.apply(Collections.singletonList(link("a", "z", "4")), Collections.singletonList(link("a", "x", "1")));
+			assertEquals(set("a|y|2", "a|z|4"), tokens(store.lookup("a")));
+			store.apply(Collections.singletonList(link("a", "x", "1")), Collections.singletonList(link("a", "x", "1")));
+			// Removals are applied before additions
+			assertEquals(set("a|x|1", "a|y|2", "a|z|4"), tokens(store.lookup("a")));
+			assertEquals(set("b||3"), tokens(store.lookup("b")));
+			assertEquals(3, store.getSegmentCount());
+		}
+	}
+
+	@Test
+	public void testCompact() throws IOException {
+		final Path directory = folder.getRoot().toPath();
+		try (BeaconLinkStore store = new BeaconLinkStore(directory)) {
+			store.load(parser("a|x|1\na|y|2\nb||3\n"));
+			store.apply(Collections.singletonList(link("c", "", "5")), Collections.singletonList(link("a", "x", "1")));
+			store.apply(Collections.emptyList(), Collections.singletonList(link("b", "", "3")));
+			store.compact();
+			assertEquals(1, store.getSegmentCount());
+			assertEquals(1, segmentFiles(directory));
+			assertEquals(set("a|y|2"), tokens(store.lookup("a")));
+			assertTrue(store.lookup("b").isEmpty());
+			assertEquals(set("c||5"), tokens(store.lookup("c")));
+		}
+		try (BeaconLinkStore store = new BeaconLinkStore(directory)) {
+			assertEquals(1, store.getSegmentCount());
+			assertEquals(set("a|y|2"), tokens(store.lookup("a")));
+			assertTrue(store.lookup("b").isEmpty());
+		}
+	}
+
+	@Test
+	public void testCompactConcurrentlyWithApply() throws Exception {
+		final StringBuilder dump = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			dump.append("s").append(i % 100).append("||t").append(i).append('\n');
+		}
+		// About 40 KB to read and write at 20 KB/s
+		try (BeaconLinkStore store = new BeaconLinkStore(folder.getRoot().toPath(), 20_000L, 100)) {
+			store.load(parser(dump.toString()));
+			store.apply(Collections.singletonList(link("s1", "", "new")), Collections.emptyList());
+			final Future<?> compaction = store.compactInBackground();
+			Thread.sleep(200L);
+			store.apply(Collections.singletonList(link("s2", "", "newer")),
+					Collections.singletonList(link("s1", "", "t1")));
+			assertFalse(compaction.isDone());
+			compaction.get();
+			// The delta applied during compaction is kept after the merged segment
+			assertEquals(2, store.getSegmentCount());
+			final Set<String> s1 = tokens(store.lookup("s1"));
+			assertEquals(20, s1.size());
+			assertTrue(s1.contains("s1||new"));
+			assertFalse(s1.contains("s1||t1"));
+			assertTrue(tokens(store.lookup("s2")).contains("s2||newer"));
+			assertFalse(store.getLastFailure().isPresent());
+		}
+	}
+
+	@Test
+	public void testCompactWithoutBase() throws Exception {
+		try (BeaconLinkStore store = new BeaconLinkStore(folder.getRoot().toPath(), Long.MAX_VALUE, 2)) {
+			store.apply(Collections.singletonList(link("a", "", "1")), Collections.emptyList());
+			assertEquals(1, store.getSegmentCount());
+			// The first delta is not a base, so the second one reaches maxDeltas and starts compaction
+			store.apply(Collections.singletonList(link("a", "", "2")), Collections.singletonList(link("a", "", "1")));
+			final long deadline = System.nanoTime() + 10_000_000_000L;
+			while (store.getSegmentCount() > 1 && System.nanoTime() < deadline) {
+				Thread.sleep(10L);
+			}
+			assertEquals(1, store.getSegmentCount());
+			assertEquals(set("a||2"), tokens(store.lookup("a")));
+			assertFalse(store.getLastFailure().isPresent());
+		}
+	}
+
+	@Test
+	public void testLoadMergesRuns() throws IOException {
+		final Path directory = folder.getRoot().toPath();
+		try (BeaconLinkStore store = new BeaconLinkStore(directory, Long.MAX_VALUE, 2, 3)) {
+			store.load(parser("e||5\nd||4\nc||3\nb||2\na||1\na||1\nb|x|6\nf||7\ng||8\nh||9\n"));
+			assertEquals(1, store.getSegmentCount());
+			assertEquals(1, segmentFiles(directory));
+			assertEquals(set("a||1"), tokens(store.lookup("a")));
+			assertEquals(set("b||2", "b|x|6"), tokens(store.lookup("b")));
+			assertEquals(set("h||9"), tokens(store.lookup("h")));
+			// Runs of a large dump do not count as deltas
+			store.apply(Collections.singletonList(link("i", "", "10")), Collections.emptyList());
+			assertEquals(2, store.getSegmentCount());
+		}
+	}
+
+	@Test
+	public void testLoadReplacesContent() throws IOException {
+		final Path directory = folder.getRoot().toPath();
+		try (BeaconLinkStore store = new BeaconLinkStore(directory)) {
+			store.load(parser("a||1\n"));
+			store.apply(Collections.singletonList(link("b", "", "2")), Collections.emptyList());
+			store.load(parser("c||3\n"));
+			assertEquals(1, store.getSegmentCount());
+			assertEquals(1, segmentFiles(directory));
+			assertTrue(store.lookup("a").isEmpty());
+			assertTrue(store.lookup("b").isEmpty());
+			assertEquals(set("c||3"), tokens(store.lookup("c")));
+		}
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		final Path directory = folder.getRoot().toPath();
+		final BeaconMetaFields metaFields;
+		try (BeaconLinkStore store = new BeaconLinkStore(directory)) {
+			assertTrue(store.lookup("a").isEmpty());
+			store.load(parser("a|x|1\nb||2\n"));
+			store.apply(Collections.singletonList(link("a", "y", "3")), Collections.emptyList());
+			metaFields = store.getMetaFields();
+		}
+		try (BeaconLinkStore store = new BeaconLinkStore(directory)) {
+			assertEquals(metaFields, store.getMetaFields());
+			assertEquals("http://example.org/{ID}", store.getMetaFields().getValue(BeaconMetaField.PREFIX));
+			assertEquals(2, store.getSegmentCount());
+			final List<BeaconLink> links = store.lookup("a");
+			assertEquals(set("a|x|1", "a|y|3"), tokens(links));
+			assertEquals("http://example.org/a", links.get(0).getSourceIdentifier().toString());
+			assertEquals(set("b||2"), tokens(store.lookup("b")));
+		}
+	}
+
+	private static BeaconLink link(final String source, final String annotation, final String target) {
+		return new BeaconLink(source, annotation, target, new BeaconMetaFields());
+	}
+
+	private static BeaconParser parser(final String links) throws IOException {
+		return new BeaconParser(new StringReader(HEADER + links));
+	}
+
+	private static int segmentFiles(final Path directory) throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*")) {
+			for (@SuppressWarnings("unused")
+			final Path path : stream) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static Set<String> set(final String... tokens) {
+		return new HashSet<>(Arrays.asList(tokens));
+	}
+
+	private static Set<String> tokens(final List<BeaconLink> links) {
+		final List<String> tokens = new ArrayList<>();
+		for (final BeaconLink link : links) {
+			tokens.add(link.getSourceToken() + "|" + link.getAnnotationToken() + "|" + link.getTargetToken());
+		}
+		final Set<String> set = new HashSet<>(tokens);
+		assertEquals("Duplicate links: " + tokens, tokens.size(), set.size());
+		return set;
+	}
+
+}
@@ -0,0 +1,65 @@
+package com.thunken.beacon;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+
+public class BeaconParserTest {
+
+	private static final String DUMP = "#FORMAT: BEACON\n#PREFIX: http://example.org/\n\n"
+			+ "a\na|b|c|d\nb|note\nc|http://example.org/x\n|x|y\nd |  nüte\t|  t²\nÅ||Ω\nlast";
+
+	@Test
+	public void testNextBatch() throws IOException {
+		final List<String> expected = new ArrayList<>();
+		try (BeaconParser parser = new BeaconParser(new StringReader(DUMP))) {
+			while (parser.hasNext()) {
+				final Optional<BeaconLink> link = parser.next();
+				if (link.isPresent()) {
+					expected.add(tokens(link.get()));
+				}
+			}
+		}
+		assertEquals(6, expected.size());
+		assertEquals("d|nüte|t2", expected.get(3));
+		assertEquals("Å||Ω", expected.get(4));
+		final List<String> actual = new ArrayList<>();
+		try (BeaconParser parser = new BeaconParser(new StringReader(DUMP))) {
+			final BeaconLink[] links = new BeaconLink[2];
+			int count;
+			while ((count = parser.nextBatch(links)) > 0) {
+				for (int i = 0; i < count; i++) {
+					actual.add(tokens(links[i]));
+				}
+			}
+		}
+		assertEquals(expected, actual);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNextBatchEmptyArray() throws IOException {
+		try (BeaconParser parser = new BeaconParser(new StringReader(DUMP))) {
+			parser.nextBatch(new BeaconLink[0]);
+		}
+	}
+
+	@Test
+	public void testParseLine() throws IOException {
+		final BeaconMetaFields metaFields = new BeaconParser(new StringReader(DUMP)).getMetaFields();
+		assertEquals(Optional.empty(), BeaconParser.parseLine("a|b|c|d", metaFields));
+		assertEquals(Optional.empty(), BeaconParser.parseLine(" |b", metaFields));
+		assertEquals("a||HTTPS://x", tokens(BeaconParser.parseLine("a|HTTPS://x", metaFields).get()));
+		assertEquals("a|b c|a", tokens(BeaconParser.parseLine("a| b \t c ", metaFields).get()));
+	}
+
+	private static String tokens(final BeaconLink link) {
+		return link.getSourceToken() + "|" + link.getAnnotationToken() + "|" + link.getTargetToken();
+	}
+
+}
@@ -0,0 +1,80 @@
+package com.thunken.beacon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class BeaconTokenFilterTest {
+
+	private static final List<String> HEADERS = Arrays.asList("#FORMAT: BEACON\n\n",
+			"#FORMAT: BEACON\n#TARGET: http://example.org/{ID}\n\n");
+
+	private static final String LINES = "a\nab\nab|x\nab|note|x\nab|http://x\nab|HTTPS://x\nab|http:x\nab| http://x\n"
+			+ "ab|http://ü\n|x|y\nab||\nab|x|\na|b|c|d\n  ab  \nab |note\n a\tb |x| y \nü|x\nab|ü|x\nab|x|ü\n"
+			+ "ａb\nab|ｈttp://x\n ab|x\nnote|note|note\nx|x|x\n";
+
+	@Test
+	public void testRawLineMatchesParsedLink() throws IOException {
+		final List<BeaconTokenFilter> filters = new ArrayList<>();
+		for (final BeaconTokenFilter.Token token : BeaconTokenFilter.Token.values()) {
+			for (final String prefix : new String[] { "", "a", "ab", "h", "http://", "ü", "x" }) {
+				filters.add(BeaconTokenFilter.prefix(token, prefix));
+			}
+			filters.add(BeaconTokenFilter.in(token, Arrays.asList("ab", "x", "note", "http://x", "ü", "", "a b")));
+			for (final String regex : new String[] { "^a", "x$", "^$", "\\s", "[^\\x21-\\x7e]", "^https?:" }) {
+				filters.add(BeaconTokenFilter.matches(token, Pattern.compile(regex)));
+			}
+		}
+		int accepted = 0, rejected = 0;
+		for (final String header : HEADERS) {
+			final List<BeaconLink> all = parse(header, null);
+			for (final BeaconTokenFilter filter : filters) {
+				final List<BeaconLink> expected = new ArrayList<>();
+				for (final BeaconLink link : all) {
+					if (filter.test(link)) {
+						expected.add(link);
+					}
+				}
+				assertEquals(filter.getToken() + " " + expected, tokens(expected), tokens(parse(header, filter)));
+				accepted += expected.size();
+				rejected += all.size() - expected.size();
+			}
+		}
+		// Both outcomes are covered
+		assertTrue(accepted > 0 && rejected > 0);
+	}
+
+	private static List<BeaconLink> parse(final String header, final BeaconTokenFilter filter) throws IOException {
+		final List<BeaconLink> links = new ArrayList<>();
+		try (BeaconParser parser = new BeaconParser(new StringReader(header + LINES))) {
+			if (filter != null) {
+				parser.addFilter(filter);
+			}
+			while (parser.hasNext()) {
+				final Optional<BeaconLink> link = parser.next();
+				if (link.isPresent()) {
+					links.add(link.get());
+				}
+			}
+		}
+		return links;
+	}
+
+	private static List<String> tokens(final List<BeaconLink> links) {
+		final List<String> tokens = new ArrayList<>();
+		for (final BeaconLink link : links) {
+			tokens.add(link.getSourceToken() + "|" + link.getAnnotationToken() + "|" + link.getTargetToken());
+		}
+		return tokens;
+	}
+
+}